@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs many Gitlet commands in one process, as
+ *      java gitlet.Main batch [FILE]
+ * Commands are read one per line from FILE, or from the standard input,
+ * with operands separated by blanks and quoted with "..." or '...' when
+ * they contain blanks; blank lines and lines starting with # are
+ * skipped. Each command runs through Main exactly as on the command
+ * line and prints the same output, but HEAD, the current branch, the
+ * stage and the branch map are kept in the batch's repository session,
+ * which each command's session reads from and hands its updates back
+ * to, and are written out only at the end, or at a line reading
+ * "checkpoint". If a command fails with an exception, a line saying so
+ * is printed, changes since the last checkpoint are dropped, and the
+ * batch goes on with the next command.
+ * @author Megan Mehta
+ */
+
+public class Batch {
+    /** Line that writes out the state held in memory. */
+    static final String CHECKPOINT = "checkpoint";
+
+    /** Runs the commands in the file named FILENAME, or on the standard
+     * input if FILENAME is null. */
+    static void run(String fileName) throws IOException {
+        if (!GitletRepo.checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Reader source;
+        if (fileName == null) {
+            source = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        } else if (new File(fileName).isFile()) {
+            source = Files.newBufferedReader(new File(fileName).toPath());
+        } else {
+            System.out.println("File does not exist.");
+            return;
+        }
+        BufferedReader lines = new BufferedReader(source);
+        try {
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                runLine(line.strip());
+            }
+            checkpoint();
+        } finally {
+            if (fileName != null) {
+                lines.close();
+            }
+        }
+    }
+
+    /** Runs the command on LINE. */
+    private static void runLine(String line) throws IOException {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        } else if (line.equals(CHECKPOINT)) {
+            checkpoint();
+            return;
+        }
+        String[] args = split(line);
+        if (args == null) {
+            System.out.println("Incorrect operands.");
+        } else if (args[0].equals("batch") || args[0].equals("daemon")) {
+            System.out.println("That command cannot be run in a batch.");
+        } else {
+            try {
+                Main.dispatch(args);
+            } catch (IOException | RuntimeException excp) {
+                RepositorySession.current().revert();
+                System.out.println("Command failed: " + line + " ("
+                        + excp.getMessage() + "); changes since the last "
+                        + "checkpoint were dropped.");
+            }
+        }
+    }
+
+    /** Writes out the state held in the batch's session. */
+    private static void checkpoint() {
+        RepositorySession.current().flush();
+        StatCache.save();
+    }
+
+    /** Returns the words of LINE, or null if a quote is not closed.
+     * Inside "...", a backslash makes the next character literal. */
+    static String[] split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (c == '\'' || c == '"') {
+                int close = i + 1;
+                for (; close < line.length() && line.charAt(close) != c;
+                     close += 1) {
+                    if (c == '"' && line.charAt(close) == '\\'
+                            && close + 1 < line.length()) {
+                        close += 1;
+                    }
+                    word.append(line.charAt(close));
+                }
+                if (close == line.length()) {
+                    return null;
+                }
+                i = close;
+            } else {
+                word.append(c);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
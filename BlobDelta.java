@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A blob stored as line edits against an earlier version of the
+ * same file. The edits come from Diff run over the lines of both
+ * versions, with each line keeping its terminator so the original
+ * bytes are rebuilt exactly. Lines are decoded as ISO-8859-1, which
+ * maps every byte to one char, so binary files survive unchanged.
+ * @author Megan Mehta
+ */
+
+public class BlobDelta {
+    /** Largest lines(base) * lines(target) product Diff is run on. Diff
+     * needs only linear space, but on files with nearly nothing in common
+     * its running time approaches this product. */
+    static final long MAX_DIFF_CELLS = 16_000_000L;
+
+    /** SHA of the blob the edits apply to. */
+    private String baseSHA;
+
+    /** Number of deltas between this blob and a full blob. */
+    private int depth;
+
+    /** Edits as returned by Diff.diffs(): groups of four ints giving the
+     * start and length of removed base lines and the start and length of
+     * the lines that replace them. */
+    private int[] edits;
+
+    /** The replacement lines of each edit, concatenated. */
+    private byte[][] inserted;
+
+    private BlobDelta(String base, int myDepth, int[] myEdits,
+                      byte[][] myInserted) {
+        this.baseSHA = base;
+        this.depth = myDepth;
+        this.edits = myEdits;
+        this.inserted = myInserted;
+    }
+
+    public String getBaseSHA() {
+        return this.baseSHA;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /** Returns a delta turning BASE (blob BASESHA, itself at depth
+     * DEPTH - 1) into TARGET, or null if the files are too large to
+     * diff or the delta would not save at least half of TARGET. */
+    static BlobDelta create(String baseSHA, int depth,
+                            byte[] base, byte[] target) {
+        List<String> baseLines = splitLines(base);
+        List<String> targetLines = splitLines(target);
+        if ((long) baseLines.size() * targetLines.size() > MAX_DIFF_CELLS) {
+            return null;
+        }
+        Diff diff = new Diff();
+        diff.setSequences(baseLines, targetLines);
+        int[] edits = diff.diffs();
+        byte[][] inserted = new byte[edits.length / 4][];
+        long size = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            StringBuilder lines = new StringBuilder();
+            for (int i = edits[k + 2]; i < edits[k + 2] + edits[k + 3];
+                 i += 1) {
+                lines.append(targetLines.get(i));
+            }
+            inserted[k / 4] = lines.toString()
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            size += inserted[k / 4].length + 4 * 4;
+        }
+        if (size * 2 >= target.length) {
+            return null;
+        }
+        return new BlobDelta(baseSHA, depth, edits, inserted);
+    }
+
+    /** Returns the blob produced by applying this delta to BASE. */
+    byte[] apply(byte[] base) {
+        List<String> baseLines = splitLines(base);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int next = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            for (; next < edits[k]; next += 1) {
+                result.writeBytes(baseLines.get(next)
+                        .getBytes(StandardCharsets.ISO_8859_1));
+            }
+            result.writeBytes(inserted[k / 4]);
+            next = edits[k] + edits[k + 1];
+        }
+        for (; next < baseLines.size(); next += 1) {
+            result.writeBytes(baseLines.get(next)
+                    .getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return result.toByteArray();
+    }
+
+    /** Writes this delta to FILE, compressed at LEVEL. */
+    void write(File file, int level) {
+        try (DataOutputStream out = new DataOutputStream(
+                Utils.openCompressedOutput(file, level))) {
+            out.writeUTF(baseSHA);
+            out.writeInt(depth);
+            out.writeInt(edits.length / 4);
+            for (int k = 0; k < edits.length; k += 4) {
+                out.writeInt(edits[k]);
+                out.writeInt(edits[k + 1]);
+                out.writeInt(edits[k + 2]);
+                out.writeInt(edits[k + 3]);
+                out.writeInt(inserted[k / 4].length);
+                out.write(inserted[k / 4]);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the delta stored in FILE. */
+    static BlobDelta read(File file) {
+        try (DataInputStream in = new DataInputStream(
+                Utils.openCompressed(file))) {
+            String base = in.readUTF();
+            int depth = in.readInt();
+            int count = in.readInt();
+            int[] edits = new int[4 * count];
+            byte[][] inserted = new byte[count][];
+            for (int i = 0; i < count; i += 1) {
+                for (int j = 0; j < 4; j += 1) {
+                    edits[4 * i + j] = in.readInt();
+                }
+                inserted[i] = in.readNBytes(in.readInt());
+            }
+            return new BlobDelta(base, depth, edits, inserted);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the depth recorded in the delta stored in FILE, without
+     * reading its edits. */
+    static int readDepth(File file) {
+        try (DataInputStream in = new DataInputStream(
+                Utils.openCompressed(file))) {
+            in.readUTF();
+            return in.readInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the lines of DATA, each ending with its '\n' except
+     * possibly the last. */
+    static List<String> splitLines(byte[] data) {
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+}
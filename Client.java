@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/** Thin client for the Gitlet daemon, invoked as
+ *      java gitlet.Client COMMAND [OPERANDS...]
+ * It sends the command to the daemon serving the current directory and
+ * prints its reply, exiting with its status. If no daemon is running,
+ * or the daemon serves another directory, the command is run in this
+ * process exactly as Main would run it. The client uses no other
+ * Gitlet class until it has to fall back, so it starts quickly.
+ * @author Megan Mehta
+ */
+
+public class Client {
+    public static void main(String... args) throws IOException {
+        int status = Daemon.NOT_SERVED;
+        String directory = new File(".").getCanonicalPath();
+        try (SocketChannel channel = SocketChannel.open(
+                UnixDomainSocketAddress.of(Path.of(Daemon.SOCKET_PATH)))) {
+            writeRequest(new DataOutputStream(
+                    Channels.newOutputStream(channel)), directory, args);
+            status = copyReply(new DataInputStream(
+                    Channels.newInputStream(channel)));
+        } catch (IOException excp) {
+            status = Daemon.NOT_SERVED;
+        }
+        if (status == Daemon.NOT_SERVED) {
+            Main.main(args);
+        }
+        System.exit(status);
+    }
+
+    /** Writes to OUT the request to run ARGS in DIRECTORY. */
+    static void writeRequest(DataOutputStream out, String directory,
+                             String[] args) throws IOException {
+        writeString(out, directory);
+        out.writeInt(args.length);
+        for (String arg : args) {
+            writeString(out, arg);
+        }
+        out.flush();
+    }
+
+    /** Copies the output in the reply read from IN to standard output
+     * and standard error, and returns the exit status it ends with. */
+    static int copyReply(DataInputStream in) throws IOException {
+        PrintStream out = System.out, err = System.err;
+        while (true) {
+            int channel = in.readByte();
+            int length = in.readInt();
+            if (channel == Daemon.EXIT) {
+                out.flush();
+                err.flush();
+                return length;
+            }
+            byte[] data = in.readNBytes(length);
+            (channel == Daemon.STDERR ? err : out).write(data, 0, data.length);
+        }
+    }
+
+    /** Writes S to OUT as a length and its UTF-8 bytes. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a string written by writeString from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(in.readInt());
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
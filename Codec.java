@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Encodes commits, the stage and the branch map in a compact binary
+ * form, in place of Java serialization. An encoding starts with a
+ * magic number, a format version and a type byte. Lengths and counts
+ * are unsigned varints, strings are UTF-8, SHAs are stored as their
+ * raw 20 bytes and maps are written in sorted order, so equal values
+ * always encode to the same bytes; a new commit's SHA is the SHA-1 of
+ * its encoding. Files written with Java serialization are still read.
+ * @author Megan Mehta
+ */
+
+public class Codec {
+    /** Marks the start of an encoding. Serialized objects start with
+     * 0xACED and compressed files with a different magic number, so
+     * the three are told apart by their first bytes. */
+    static final byte[] MAGIC = { 0, 'g', 'l', 'b' };
+
+    /** Current format version. */
+    static final int VERSION = 1;
+
+    /** Type byte of an encoded Commit. */
+    static final byte COMMIT = 'C';
+    /** Type byte of an encoded Stage. */
+    static final byte STAGE = 'S';
+    /** Type byte of an encoded branch map. */
+    static final byte REFS = 'R';
+
+    /** Size of a raw SHA. */
+    static final int SHA_SIZE = 20;
+
+    /** Lower-case hex digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns the encoding of COMMIT. Its own SHA is not part of it. */
+    static byte[] encode(Commit commit) {
+        ByteArrayOutputStream out = header(COMMIT);
+        putString(out, commit.getMsg());
+        putString(out, commit.getTimestamp());
+        putOptionalSHA(out, commit.getParentSHA());
+        putOptionalSHA(out, commit.getSecondParentSHA());
+        putString(out, commit.getBranch());
+        putMap(out, commit.getBlobs());
+        return out.toByteArray();
+    }
+
+    /** Returns the encoding of STAGE. */
+    static byte[] encode(Stage stage) {
+        ByteArrayOutputStream out = header(STAGE);
+        putMap(out, stage.getAddedFiles());
+        putMap(out, stage.getRemovedFiles());
+        return out.toByteArray();
+    }
+
+    /** Returns the encoding of BRANCHMAP, a map of branch name to head
+     * commit SHA. */
+    static byte[] encodeRefs(TreeMap<String, String> branchMap) {
+        ByteArrayOutputStream out = header(REFS);
+        putMap(out, branchMap);
+        return out.toByteArray();
+    }
+
+    /** Returns the commit with SHA COMMITID stored in FILE. The SHA is
+     * not recomputed, since a commit's branch may be updated after it
+     * is made. */
+    static Commit readCommit(File file, String commitID) {
+        byte[] bytes = Utils.readCompressed(file);
+        if (!isEncoded(bytes)) {
+            return legacy(bytes, Commit.class);
+        }
+        ByteBuffer in = body(bytes, COMMIT);
+        try {
+            return new Commit(getString(in), getString(in),
+                    getOptionalSHA(in), getOptionalSHA(in), getString(in),
+                    getMap(in), commitID);
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("truncated commit");
+        }
+    }
+
+    /** Returns the stage stored in FILE. */
+    static Stage readStage(File file) {
+        return decodeStage(Utils.readCompressed(file));
+    }
+
+    /** Returns the stage encoded, or serialized, in BYTES. */
+    static Stage decodeStage(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            return legacy(bytes, Stage.class);
+        }
+        ByteBuffer in = body(bytes, STAGE);
+        Stage stage = new Stage();
+        try {
+            stage.getAddedFiles().putAll(getMap(in));
+            stage.getRemovedFiles().putAll(getMap(in));
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("truncated stage");
+        }
+        return stage;
+    }
+
+    /** Returns the branch map stored in FILE. */
+    static TreeMap<String, String> readRefs(File file) {
+        return decodeRefs(Utils.readCompressed(file));
+    }
+
+    /** Returns the branch map encoded, or serialized, in BYTES. */
+    @SuppressWarnings("unchecked")
+    static TreeMap<String, String> decodeRefs(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            return legacy(bytes, TreeMap.class);
+        }
+        try {
+            return getMap(body(bytes, REFS));
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("truncated branch map");
+        }
+    }
+
+    /** Returns true if BYTES start with MAGIC. */
+    static boolean isEncoded(byte[] bytes) {
+        return bytes.length >= MAGIC.length + 2
+                && Arrays.equals(bytes, 0, MAGIC.length,
+                                 MAGIC, 0, MAGIC.length);
+    }
+
+    /** Returns a stream holding the header of an encoding of TYPE. */
+    private static ByteArrayOutputStream header(byte type) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        out.write(type);
+        return out;
+    }
+
+    /** Returns BYTES positioned after their header, checking that they
+     * encode a TYPE in a version this code can read. */
+    private static ByteBuffer body(byte[] bytes, byte type) {
+        int version = bytes[MAGIC.length];
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("unsupported format version "
+                    + version);
+        } else if (bytes[MAGIC.length + 1] != type) {
+            throw new IllegalArgumentException("unexpected object type");
+        }
+        return ByteBuffer.wrap(bytes, MAGIC.length + 2,
+                bytes.length - MAGIC.length - 2);
+    }
+
+    /** Returns the object of class EXPECTEDCLASS written with Java
+     * serialization as BYTES. */
+    private static <T> T legacy(byte[] bytes, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes VALUE to OUT as an unsigned varint. */
+    static void putVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads an unsigned varint from IN. */
+    static int getVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /** Writes S to OUT as a length and its UTF-8 bytes. */
+    private static void putString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    /** Reads a string written by putString from IN. */
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[getVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Writes the hex SHA to OUT as its raw bytes. */
+    private static void putSHA(ByteArrayOutputStream out, String sha) {
+        if (sha.length() != 2 * SHA_SIZE) {
+            throw new IllegalArgumentException("bad SHA " + sha);
+        }
+        out.writeBytes(Utils.fromHex(sha));
+    }
+
+    /** Reads a raw SHA from IN as hex. */
+    private static String getSHA(ByteBuffer in) {
+        char[] sha = new char[2 * SHA_SIZE];
+        for (int i = 0; i < sha.length; i += 2) {
+            byte b = in.get();
+            sha[i] = HEX_DIGITS[(b >> 4) & 0xf];
+            sha[i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(sha);
+    }
+
+    /** Writes SHA, which may be null, to OUT. */
+    private static void putOptionalSHA(ByteArrayOutputStream out,
+                                       String sha) {
+        out.write(sha == null ? 0 : 1);
+        if (sha != null) {
+            putSHA(out, sha);
+        }
+    }
+
+    /** Reads a SHA written by putOptionalSHA from IN. */
+    private static String getOptionalSHA(ByteBuffer in) {
+        return in.get() == 0 ? null : getSHA(in);
+    }
+
+    /** Writes MAP, of names to SHAs, to OUT in sorted order. */
+    private static void putMap(ByteArrayOutputStream out,
+                               Map<String, String> map) {
+        TreeMap<String, String> sorted = map instanceof TreeMap
+                && ((TreeMap<String, String>) map).comparator() == null
+                ? (TreeMap<String, String>) map : new TreeMap<>(map);
+        putVarint(out, sorted.size());
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            putString(out, entry.getKey());
+            putSHA(out, entry.getValue());
+        }
+    }
+
+    /** Reads a map written by putMap from IN. */
+    private static TreeMap<String, String> getMap(ByteBuffer in) {
+        TreeMap<String, String> map = new TreeMap<>();
+        for (int n = getVarint(in); n > 0; n -= 1) {
+            map.put(getString(in), getSHA(in));
+        }
+        return map;
+    }
+}
@@ -11,6 +11,10 @@ import java.io.Serializable;
  */
 
 public class Commit implements Serializable {
+    /***  Pinned so commits written before the parent field became
+     * transient still deserialize. */
+    private static final long serialVersionUID = 6442736000112282062L;
+
     /***  Holds commit message.*/
     private String msg;
 
@@ -23,11 +27,15 @@ public class Commit implements Serializable {
     /***  Holds parent commit's SHA.*/
     private String parentSHA;
 
+    /***  Holds the SHA of the merged-in parent, for merge commits.*/
+    private String secondParentSHA;
+
     /***  Holds <fileName, fileSHA> for each file tracked by this commit.*/
     private TreeMap<String, String> blobs;
 
-    /***  Holds parent commit object, if it exists.*/
-    private Commit parent;
+    /***  Holds parent commit object, if it exists. Never written to disk;
+     * resolved from parentSHA the first time getParent() is called. */
+    private transient Commit parent;
 
     /***  Holds name of branch this commit is on.*/
     private String branch;
@@ -41,6 +49,19 @@ public class Commit implements Serializable {
      */
     public Commit(String message, Commit myParent,
                   TreeMap<String, String> blobMap, String myBranch) {
+        this(message, myParent, null, blobMap, myBranch);
+    }
+
+    /**
+     * Constructor for a merge commit.
+     * @param message commit message
+     * @param myParent parent commit on the current branch
+     * @param mySecondParent head of the merged-in branch, or null
+     * @param blobMap TreeMap that holds all the blobs being tracked
+     * @param myBranch branch this commit is on
+     */
+    public Commit(String message, Commit myParent, Commit mySecondParent,
+                  TreeMap<String, String> blobMap, String myBranch) {
         this.msg = message;
         this.parent = myParent;
         this.blobs = blobMap;
@@ -50,14 +71,38 @@ public class Commit implements Serializable {
         this.timestamp = currDateTime.format
                 (DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z"));
 
-        this.mySHA = Utils.sha1(Utils.serialize(this));
-
         if (parent != null) {
             this.parentSHA = parent.mySHA;
         } else {
             this.parentSHA = null;
         }
+        if (mySecondParent != null) {
+            this.secondParentSHA = mySecondParent.mySHA;
+        }
 
+        this.mySHA = Utils.sha1(Codec.encode(this));
+    }
+
+    /**
+     * Constructor for a commit read back from its encoding.
+     * @param message commit message
+     * @param myTimestamp when the commit was made
+     * @param myParentSHA SHA of the parent, or null
+     * @param mySecondParentSHA SHA of the merged-in parent, or null
+     * @param myBranch branch this commit is on
+     * @param blobMap TreeMap that holds all the blobs being tracked
+     * @param sha SHA of this commit
+     */
+    Commit(String message, String myTimestamp, String myParentSHA,
+           String mySecondParentSHA, String myBranch,
+           TreeMap<String, String> blobMap, String sha) {
+        this.msg = message;
+        this.timestamp = myTimestamp;
+        this.parentSHA = myParentSHA;
+        this.secondParentSHA = mySecondParentSHA;
+        this.branch = myBranch;
+        this.blobs = blobMap;
+        this.mySHA = sha;
     }
 
     public String getMsg() {
@@ -76,7 +121,17 @@ public class Commit implements Serializable {
         return this.parentSHA;
     }
 
+    /** Returns the SHA of the merged-in parent, or null. */
+    public String getSecondParentSHA() {
+        return this.secondParentSHA;
+    }
+
+    /** Returns the parent commit, loading it from the commits
+     * directory on first use. Returns null for the initial commit. */
     public Commit getParent() {
+        if (this.parent == null && this.parentSHA != null) {
+            this.parent = CommitStore.read(this.parentSHA);
+        }
         return this.parent;
     }
 
@@ -84,7 +139,7 @@ public class Commit implements Serializable {
         this.parent = setParent;
     }
 
-    public TreeMap getBlobs() {
+    public TreeMap<String, String> getBlobs() {
         return this.blobs;
     }
 
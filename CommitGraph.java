@@ -0,0 +1,337 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** A compact binary copy of the commit history, so walks over the
+ * history never have to deserialize commits. The file
+ * .gitlet/index/graph.dat starts with a header (magic, version and
+ * record count) followed by one fixed-width record per commit, in
+ * the order commits were made, so every parent comes before its
+ * children. A record holds the commit's raw 20-byte SHA, the
+ * positions of its parents (-1 when absent), its commit time in
+ * epoch seconds and its generation number: 1 for the initial commit,
+ * otherwise one more than its highest-generation parent. The file is
+ * memory-mapped for reading and extended by one record per commit.
+ * Commits are looked up by searching back from the newest record, as
+ * the commits asked about, such as a new commit's parents or branch
+ * heads, are nearly always recent.
+ * @author Megan Mehta
+ */
+
+public class CommitGraph {
+    /** Commit graph file path as a String. */
+    static final String GRAPH_FILE_PATH = ".gitlet/index/graph.dat";
+    /** Commit graph file path File object. */
+    static final File GRAPHFILEPATH = new File(GRAPH_FILE_PATH);
+
+    /** First four bytes of the graph file. */
+    static final int MAGIC = 0x474c4752;
+    /** Format version of the graph file. */
+    static final int VERSION = 1;
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 12;
+    /** Size of the raw SHA in a record. */
+    static final int SHA_SIZE = 20;
+    /** Size of one record in bytes. */
+    static final int RECORD_SIZE = SHA_SIZE + 4 + 4 + 8 + 4;
+    /** Marks a missing parent. */
+    static final int NONE = -1;
+
+    /** Format of Commit timestamps. */
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z");
+
+    /** The mapped graph file. */
+    private final MappedByteBuffer records;
+
+    /** Number of commits in the graph. */
+    private final int count;
+
+    private CommitGraph(MappedByteBuffer myRecords, int myCount) {
+        this.records = myRecords;
+        this.count = myCount;
+    }
+
+    /** Returns the graph of the current repository, rebuilding the
+     * graph file first if it is missing or unreadable. */
+    static CommitGraph load() {
+        if (!isValid()) {
+            rebuild();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(GRAPHFILEPATH, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer map = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CommitGraph(map, map.getInt(8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the position of the commit with SHA COMMITID, or NONE,
+     * searching back from the newest commit. */
+    int position(String commitID) {
+        byte[] key = Utils.fromHex(commitID);
+        byte[] raw = new byte[SHA_SIZE];
+        for (int pos = count - 1; pos >= 0; pos -= 1) {
+            records.get(offset(pos), raw);
+            if (Arrays.equals(raw, key)) {
+                return pos;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the SHA of the commit at POS. */
+    String sha(int pos) {
+        byte[] raw = new byte[SHA_SIZE];
+        records.get(offset(pos), raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the position of the first parent of the commit at POS,
+     * or NONE. */
+    int parent(int pos) {
+        return records.getInt(offset(pos) + SHA_SIZE);
+    }
+
+    /** Returns the position of the second parent of the commit at POS,
+     * or NONE. */
+    int secondParent(int pos) {
+        return records.getInt(offset(pos) + SHA_SIZE + 4);
+    }
+
+    /** Returns the generation number of the commit at POS. */
+    int generation(int pos) {
+        return records.getInt(offset(pos) + SHA_SIZE + 16);
+    }
+
+    /** Returns true if the commit at ANCESTOR is the commit at POS or
+     * one of its ancestors. Commits with a generation number no higher
+     * than ANCESTOR's cannot lead to it, so they are not followed. */
+    boolean isAncestor(int ancestor, int pos) {
+        int floor = generation(ancestor);
+        BitSet seen = new BitSet(count);
+        ArrayDeque<Integer> todo = new ArrayDeque<>();
+        todo.push(pos);
+        while (!todo.isEmpty()) {
+            int p = todo.pop();
+            if (p == ancestor) {
+                return true;
+            }
+            if (p == NONE || seen.get(p) || generation(p) <= floor) {
+                continue;
+            }
+            seen.set(p);
+            todo.push(parent(p));
+            todo.push(secondParent(p));
+        }
+        return false;
+    }
+
+    /** Returns the position of the latest common ancestor of the
+     * commits at POS1 and POS2. Both histories are walked at once,
+     * highest generation first, marking each commit in a bitset for the
+     * side it was reached from; since children always outrank their
+     * parents, the first commit taken with both marks is a common
+     * ancestor no other common ancestor descends from, and the walk stops
+     * there. Returns NONE if the commits share no history. */
+    int mergeBase(int pos1, int pos2) {
+        BitSet fromFirst = new BitSet(count);
+        BitSet fromSecond = new BitSet(count);
+        BitSet queued = new BitSet(count);
+        PriorityQueue<Integer> todo = new PriorityQueue<>((a, b) -> {
+            int cmp = Integer.compare(generation(b), generation(a));
+            return cmp != 0 ? cmp : Integer.compare(b, a);
+        });
+        fromFirst.set(pos1);
+        fromSecond.set(pos2);
+        todo.add(pos1);
+        queued.set(pos1);
+        if (!queued.get(pos2)) {
+            todo.add(pos2);
+            queued.set(pos2);
+        }
+        while (!todo.isEmpty()) {
+            int p = todo.poll();
+            boolean first = fromFirst.get(p), second = fromSecond.get(p);
+            if (first && second) {
+                return p;
+            }
+            for (int parent : new int[] { parent(p), secondParent(p) }) {
+                if (parent == NONE) {
+                    continue;
+                }
+                if (first) {
+                    fromFirst.set(parent);
+                }
+                if (second) {
+                    fromSecond.set(parent);
+                }
+                if (!queued.get(parent)) {
+                    queued.set(parent);
+                    todo.add(parent);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the byte offset of the record at POS. */
+    private static int offset(int pos) {
+        return HEADER_SIZE + pos * RECORD_SIZE;
+    }
+
+    /** Appends COMMIT, which must not be in the graph yet, to the graph
+     * file. Its parents must already be in the graph; if they are not,
+     * the whole file is rebuilt. */
+    static void add(Commit commit) {
+        if (!isValid()) {
+            rebuild();
+            return;
+        }
+        CommitGraph graph = load();
+        int[] parents = new int[2];
+        String[] parentIDs = parentIDs(commit);
+        int generation = 1;
+        for (int i = 0; i < 2; i += 1) {
+            parents[i] = parentIDs[i] == null ? NONE
+                    : graph.position(parentIDs[i]);
+            if (parentIDs[i] != null && parents[i] == NONE) {
+                rebuild();
+                return;
+            }
+            if (parents[i] != NONE) {
+                generation = Math.max(generation,
+                        graph.generation(parents[i]) + 1);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(GRAPHFILEPATH,
+                "rw")) {
+            raf.seek(offset(graph.count));
+            raf.write(record(commit, parents, generation).array());
+            raf.seek(8);
+            raf.writeInt(graph.count + 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Recreates the graph file from the commits in the repository. */
+    static void rebuild() {
+        List<String> ids = CommitStore.allIDs();
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : ids) {
+            commits.put(id, CommitStore.read(id));
+        }
+        HashMap<String, Integer> placed = new HashMap<>();
+        List<Commit> order = new ArrayList<>();
+        for (String id : ids) {
+            ArrayDeque<String> todo = new ArrayDeque<>();
+            todo.push(id);
+            while (!todo.isEmpty()) {
+                String next = todo.peek();
+                if (placed.containsKey(next) || !commits.containsKey(next)) {
+                    todo.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (String parentID : parentIDs(commits.get(next))) {
+                    if (parentID != null && !placed.containsKey(parentID)
+                            && commits.containsKey(parentID)) {
+                        todo.push(parentID);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    todo.pop();
+                    placed.put(next, order.size());
+                    order.add(commits.get(next));
+                }
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE
+                + order.size() * RECORD_SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putInt(order.size());
+        int[] generations = new int[order.size()];
+        for (int i = 0; i < order.size(); i += 1) {
+            String[] parentIDs = parentIDs(order.get(i));
+            int[] parents = new int[2];
+            generations[i] = 1;
+            for (int j = 0; j < 2; j += 1) {
+                Integer pos = parentIDs[j] == null ? null
+                        : placed.get(parentIDs[j]);
+                parents[j] = pos == null ? NONE : pos;
+                if (pos != null) {
+                    generations[i] = Math.max(generations[i],
+                            generations[pos] + 1);
+                }
+            }
+            out.put(record(order.get(i), parents, generations[i]).array());
+        }
+        CommitStore.INDEXPATH.mkdir();
+        Utils.writeContents(GRAPHFILEPATH, out.array());
+    }
+
+    /** Returns true if the graph file exists and has a valid header. */
+    private static boolean isValid() {
+        if (!GRAPHFILEPATH.isFile()
+                || GRAPHFILEPATH.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(GRAPHFILEPATH,
+                "r")) {
+            return raf.readInt() == MAGIC && raf.readInt() == VERSION
+                    && GRAPHFILEPATH.length()
+                    >= offset(raf.readInt());
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the first and second parent SHAs of COMMIT, either of
+     * which may be null. */
+    private static String[] parentIDs(Commit commit) {
+        return new String[] {
+            commit.getParentSHA(), commit.getSecondParentSHA()
+        };
+    }
+
+    /** Returns the graph record for COMMIT with PARENTS and GENERATION. */
+    private static ByteBuffer record(Commit commit, int[] parents,
+                                     int generation) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(Utils.fromHex(commit.getMySHA()));
+        record.putInt(parents[0]).putInt(parents[1]);
+        record.putLong(epochSeconds(commit.getTimestamp()));
+        record.putInt(generation);
+        return record;
+    }
+
+    /** Returns TIMESTAMP, as stored in a Commit, in epoch seconds, or 0
+     * if it cannot be parsed. */
+    static long epochSeconds(String timestamp) {
+        try {
+            return ZonedDateTime.parse(timestamp, TIMESTAMP_FORMAT)
+                    .toEpochSecond();
+        } catch (DateTimeParseException excp) {
+            return 0;
+        }
+    }
+}
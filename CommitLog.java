@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** An append-only log of what global-log prints for each commit, so it
+ * never deserializes commits. .gitlet/index/log.dat holds one
+ * fixed-width record per commit, in the order commits were made: the
+ * raw 20-byte SHA, the commit time in epoch seconds, the latest commit
+ * time of it and every record before it, and the offset and length of
+ * an entry in .gitlet/index/log.txt holding the commit's date line and
+ * message. The record file is memory-mapped and read from the end, so
+ * newer commits come first, while entries are read from the text file
+ * at their 64-bit offsets, and the running latest time lets a search
+ * for commits since some time stop as soon as nothing earlier can
+ * match.
+ * @author Megan Mehta
+ */
+
+public class CommitLog {
+    /** Commit log record file path as a String. */
+    static final String LOG_FILE_PATH = ".gitlet/index/log.dat";
+    /** Commit log record file path File object. */
+    static final File LOGFILEPATH = new File(LOG_FILE_PATH);
+
+    /** Commit log text file path as a String. */
+    static final String LOG_TEXT_PATH = ".gitlet/index/log.txt";
+    /** Commit log text file path File object. */
+    static final File LOGTEXTPATH = new File(LOG_TEXT_PATH);
+
+    /** Size of the raw SHA in a record. */
+    static final int SHA_SIZE = 20;
+    /** Size of one record in bytes. */
+    static final int RECORD_SIZE = SHA_SIZE + 8 + 8 + 8 + 4;
+
+    /** Size of the buffer global-log output goes through. */
+    static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Appends COMMIT to the log, rebuilding the whole log instead if it
+     * does not exist yet. */
+    static void add(Commit commit) {
+        if (!LOGFILEPATH.isFile() || !LOGTEXTPATH.isFile()) {
+            rebuild();
+            return;
+        }
+        try (RandomAccessFile records = new RandomAccessFile(LOGFILEPATH,
+                "rw");
+             RandomAccessFile text = new RandomAccessFile(LOGTEXTPATH,
+                "rw")) {
+            long count = records.length() / RECORD_SIZE;
+            long latest = Long.MIN_VALUE;
+            if (count > 0) {
+                records.seek((count - 1) * RECORD_SIZE + SHA_SIZE + 8);
+                latest = records.readLong();
+            }
+            text.seek(text.length());
+            records.seek(count * RECORD_SIZE);
+            records.write(entry(commit, latest, text).array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Recreates the log from the commits in the repository. */
+    static void rebuild() {
+        CommitStore.INDEXPATH.mkdir();
+        List<String> ids = CommitStore.allIDs();
+        LOGFILEPATH.delete();
+        LOGTEXTPATH.delete();
+        try (RandomAccessFile records = new RandomAccessFile(LOGFILEPATH,
+                "rw");
+             RandomAccessFile text = new RandomAccessFile(LOGTEXTPATH,
+                "rw")) {
+            ByteBuffer all = ByteBuffer.allocate(ids.size() * RECORD_SIZE);
+            long latest = Long.MIN_VALUE;
+            for (String id : ids) {
+                Commit commit = CommitStore.read(id);
+                all.put(entry(commit, latest, text).array());
+                latest = Math.max(latest,
+                        CommitGraph.epochSeconds(commit.getTimestamp()));
+            }
+            records.write(all.array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Appends the date line and message of COMMIT to TEXT, which is
+     * positioned at its end, and returns its record. LATEST is the
+     * latest commit time already in the log. */
+    private static ByteBuffer entry(Commit commit, long latest,
+                                    RandomAccessFile text) throws IOException {
+        byte[] entry = ("Date: " + commit.getTimestamp() + "\n"
+                + commit.getMsg()).getBytes(StandardCharsets.UTF_8);
+        long offset = text.getFilePointer();
+        text.write(entry);
+        long time = CommitGraph.epochSeconds(commit.getTimestamp());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(Utils.fromHex(commit.getMySHA()));
+        record.putLong(time).putLong(Math.max(latest, time));
+        record.putLong(offset).putInt(entry.length);
+        return record;
+    }
+
+    /** Prints, newest first, the commits made from SINCE to UNTIL epoch
+     * seconds, both inclusive, stopping after LIMIT of them. Output is
+     * buffered and written once. */
+    static void print(long since, long until, int limit) {
+        if (!LOGFILEPATH.isFile() || !LOGTEXTPATH.isFile()) {
+            rebuild();
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                OUTPUT_BUFFER));
+        try (RandomAccessFile recordFile = new RandomAccessFile(LOGFILEPATH,
+                "r");
+             RandomAccessFile textFile = new RandomAccessFile(LOGTEXTPATH,
+                "r");
+             FileChannel recordChannel = recordFile.getChannel();
+             FileChannel textChannel = textFile.getChannel()) {
+            MappedByteBuffer records = recordChannel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, recordChannel.size());
+            int printed = 0;
+            byte[] sha = new byte[SHA_SIZE];
+            for (int pos = (int) (recordChannel.size() / RECORD_SIZE) - 1;
+                 pos >= 0 && printed < limit; pos -= 1) {
+                int offset = pos * RECORD_SIZE;
+                long time = records.getLong(offset + SHA_SIZE);
+                if (records.getLong(offset + SHA_SIZE + 8) < since) {
+                    break;
+                } else if (time < since || time > until) {
+                    continue;
+                }
+                records.get(offset, sha);
+                byte[] entry = new byte[records.getInt(offset + SHA_SIZE
+                        + 8 + 8 + 8)];
+                readFully(textChannel, entry,
+                        records.getLong(offset + SHA_SIZE + 8 + 8));
+                out.println("===");
+                out.println("commit " + Utils.toHex(sha));
+                out.println(new String(entry, StandardCharsets.UTF_8));
+                out.println();
+                printed += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            out.flush();
+        }
+    }
+
+    /** Fills BUFFER with the bytes of CHANNEL starting at POSITION, which
+     * may lie anywhere in a file of any size. */
+    private static void readFully(FileChannel channel, byte[] buffer,
+                                  long position) throws IOException {
+        ByteBuffer into = ByteBuffer.wrap(buffer);
+        while (into.hasRemaining()) {
+            if (channel.read(into, position + into.position()) < 0) {
+                throw new IOException("commit log text is truncated");
+            }
+        }
+    }
+}
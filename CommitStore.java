@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** Reads and writes Commit objects by SHA. A commit is stored in
+ * a file named after its SHA, so lookups open exactly one file
+ * instead of scanning the commits directory. Every SHA written is
+ * also appended to a persistent index so commands that need all
+ * commit IDs never have to deserialize commits to find them.
+ * A second, sorted index of fixed-width SHA records is kept
+ * alongside it so abbreviated IDs resolve by binary search. New SHAs
+ * are appended to a short unsorted tail file, which lookups scan as
+ * well, and merged into the sorted index once it grows past
+ * TAIL_LIMIT records, so a commit does not rewrite the whole index.
+ * @author Megan Mehta
+ */
+
+public class CommitStore {
+    /** Commit index directory path as a String. */
+    static final String INDEX_PATH = ".gitlet/index/";
+    /** Commit index directory path File object. */
+    static final File INDEXPATH = new File(INDEX_PATH);
+
+    /** Commit index file path as a String. */
+    static final String INDEX_FILE_PATH = ".gitlet/index/commits.txt";
+    /** Commit index file path File object. */
+    static final File INDEXFILEPATH = new File(INDEX_FILE_PATH);
+
+    /** Sorted SHA index file path as a String. */
+    static final String SORTED_INDEX_PATH = ".gitlet/index/sorted.idx";
+    /** Sorted SHA index file path File object. */
+    static final File SORTEDINDEXPATH = new File(SORTED_INDEX_PATH);
+
+    /** Unsorted tail of the sorted index as a String. */
+    static final String SORTED_TAIL_PATH = ".gitlet/index/sorted.tail";
+    /** Unsorted tail of the sorted index File object. */
+    static final File SORTEDTAILPATH = new File(SORTED_TAIL_PATH);
+
+    /** Number of records the tail may hold before it is merged into the
+     * sorted index. */
+    static final int TAIL_LIMIT = 1024;
+
+    /** Shortest abbreviated commit ID that will be resolved. */
+    static final int MIN_PREFIX_LENGTH = 4;
+
+    /** Returns the file that holds the commit with SHA COMMITID. */
+    static File commitFile(String commitID) {
+        return ObjectStore.locate(GitletRepo.COMMITPATH, commitID);
+    }
+
+    /** Returns true if a commit with the full SHA COMMITID exists. */
+    public static boolean contains(String commitID) {
+        return commitID != null
+                && commitID.length() == Utils.UID_LENGTH
+                && commitFile(commitID).isFile();
+    }
+
+    /** Returns the commit with the full SHA COMMITID, or null if
+     * there is no such commit. */
+    public static Commit read(String commitID) {
+        if (!contains(commitID)) {
+            return null;
+        }
+        return Codec.readCommit(commitFile(commitID), commitID);
+    }
+
+    /** Writes COMMIT to its file, adding its SHA to the index the
+     * first time it is written. */
+    public static void write(Commit commit) {
+        boolean isNew = !contains(commit.getMySHA());
+        ObjectStore.writeCommit(isNew
+                ? ObjectStore.fileForWrite(GitletRepo.COMMITPATH,
+                        commit.getMySHA())
+                : commitFile(commit.getMySHA()), commit);
+        if (isNew) {
+            appendToIndex(commit.getMySHA());
+            insertIntoSortedIndex(commit.getMySHA());
+            CommitGraph.add(commit);
+            MessageIndex.add(commit);
+            CommitLog.add(commit);
+        }
+    }
+
+    /** Returns the SHAs of every commit in the repository, in the
+     * order they were first written. */
+    public static List<String> allIDs() {
+        if (!INDEXFILEPATH.isFile()) {
+            rebuildIndex();
+        }
+        List<String> ids = new ArrayList<>();
+        for (String line : Utils.readContentsAsString(INDEXFILEPATH)
+                .split("\n")) {
+            if (!line.isEmpty()) {
+                ids.add(line);
+            }
+        }
+        return ids;
+    }
+
+    /** Appends COMMITID to the index file. */
+    private static void appendToIndex(String commitID) {
+        if (!INDEXFILEPATH.isFile()) {
+            rebuildIndex();
+            return;
+        }
+        try {
+            Files.write(INDEXFILEPATH.toPath(),
+                    (commitID + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Recreates the index from the commits directory, for
+     * repositories made before the index existed. */
+    static void rebuildIndex() {
+        INDEXPATH.mkdir();
+        StringBuilder ids = new StringBuilder();
+        for (String commitID : ObjectStore.allIDs(GitletRepo.COMMITPATH)) {
+            ids.append(commitID).append("\n");
+        }
+        Utils.writeContents(INDEXFILEPATH, ids.toString());
+    }
+
+    /** Returns the full SHAs of the commits whose IDs start with
+     * PREFIX, in sorted order. At most LIMIT matches are returned, so
+     * callers checking for ambiguity only need to ask for two. Prefixes
+     * shorter than MIN_PREFIX_LENGTH or containing non-hex characters
+     * match nothing. */
+    public static List<String> findByPrefix(String prefix, int limit) {
+        TreeSet<String> matches = new TreeSet<>();
+        if (prefix.length() < MIN_PREFIX_LENGTH
+                || prefix.length() > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-f]+")) {
+            return new ArrayList<>();
+        }
+        if (!SORTEDINDEXPATH.isFile()) {
+            rebuildSortedIndex();
+        }
+        byte[] key = prefix.getBytes(StandardCharsets.US_ASCII);
+        try (RandomAccessFile raf = new RandomAccessFile(SORTEDINDEXPATH, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer index = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = (int) (channel.size() / Utils.UID_LENGTH);
+            byte[] record = new byte[Utils.UID_LENGTH];
+            for (int i = lowerBound(index, count, key);
+                 i < count && matches.size() < limit; i += 1) {
+                index.get(i * Utils.UID_LENGTH, record);
+                if (compare(record, key) != 0) {
+                    break;
+                }
+                matches.add(new String(record, StandardCharsets.US_ASCII));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String id : readTail()) {
+            if (id.startsWith(prefix)) {
+                matches.add(id);
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String id : matches) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Returns the position of the first of the COUNT records in INDEX
+     * that is not less than KEY, compared over KEY's length. */
+    private static int lowerBound(MappedByteBuffer index, int count,
+                                  byte[] key) {
+        byte[] record = new byte[Utils.UID_LENGTH];
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(mid * Utils.UID_LENGTH, record);
+            if (compare(record, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compares the first KEY.length bytes of RECORD against KEY. */
+    private static int compare(byte[] record, byte[] key) {
+        for (int i = 0; i < key.length; i += 1) {
+            if (record[i] != key[i]) {
+                return record[i] - key[i];
+            }
+        }
+        return 0;
+    }
+
+    /** Adds COMMITID to the tail of the sorted index, merging the tail
+     * into the index once it is full. */
+    private static void insertIntoSortedIndex(String commitID) {
+        if (!SORTEDINDEXPATH.isFile()) {
+            rebuildSortedIndex();
+            return;
+        }
+        try {
+            Files.write(SORTEDTAILPATH.toPath(),
+                    commitID.getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (SORTEDTAILPATH.length() >= (long) TAIL_LIMIT * Utils.UID_LENGTH) {
+            mergeTail();
+        }
+    }
+
+    /** Returns the SHAs in the tail of the sorted index. */
+    private static List<String> readTail() {
+        List<String> ids = new ArrayList<>();
+        if (!SORTEDTAILPATH.isFile()) {
+            return ids;
+        }
+        String tail = new String(Utils.readContents(SORTEDTAILPATH),
+                StandardCharsets.US_ASCII);
+        for (int i = 0; i + Utils.UID_LENGTH <= tail.length();
+             i += Utils.UID_LENGTH) {
+            ids.add(tail.substring(i, i + Utils.UID_LENGTH));
+        }
+        return ids;
+    }
+
+    /** Merges the tail into the sorted index and empties it. */
+    private static void mergeTail() {
+        String sorted = new String(Utils.readContents(SORTEDINDEXPATH),
+                StandardCharsets.US_ASCII);
+        replaceSortedIndex(mergeRecords(sorted, readTail())
+                .getBytes(StandardCharsets.US_ASCII));
+        SORTEDTAILPATH.delete();
+    }
+
+    /** Returns the sorted SHA records SORTED with the SHAs in TAIL merged
+     * in at their sorted positions, dropping duplicates. */
+    static String mergeRecords(String sorted, List<String> tail) {
+        List<String> added = new ArrayList<>(tail);
+        Collections.sort(added);
+        StringBuilder records = new StringBuilder(sorted.length()
+                + added.size() * Utils.UID_LENGTH);
+        int i = 0, j = 0;
+        String last = null;
+        while (i < sorted.length() || j < added.size()) {
+            String next = i < sorted.length()
+                    ? sorted.substring(i, i + Utils.UID_LENGTH) : null;
+            if (next != null && (j == added.size()
+                    || next.compareTo(added.get(j)) <= 0)) {
+                i += Utils.UID_LENGTH;
+            } else {
+                next = added.get(j);
+                j += 1;
+            }
+            if (!next.equals(last)) {
+                records.append(next);
+                last = next;
+            }
+        }
+        return records.toString();
+    }
+
+    /** Recreates the sorted index from the commit index. */
+    static void rebuildSortedIndex() {
+        List<String> ids = allIDs();
+        Collections.sort(ids);
+        StringBuilder records = new StringBuilder();
+        for (String id : ids) {
+            records.append(id);
+        }
+        replaceSortedIndex(records.toString()
+                .getBytes(StandardCharsets.US_ASCII));
+        SORTEDTAILPATH.delete();
+    }
+
+    /** Replaces the sorted index with CONTENTS through a temporary file,
+     * so readers never see a half-written index. */
+    private static void replaceSortedIndex(byte[] contents) {
+        INDEXPATH.mkdir();
+        Durability.replaceAll(Map.of(SORTEDINDEXPATH, contents));
+    }
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/** Repository settings, stored as key=value lines in
+ * .gitlet/config.txt. A setting can be overridden for a single run
+ * with the JVM property -Dgitlet.KEY=VALUE.
+ * @author Megan Mehta
+ */
+
+public class Config {
+    /** Config file path as a String. */
+    static final String CONFIG_FILE_PATH = ".gitlet/config.txt";
+    /** Config file path File object. */
+    static final File CONFIGFILEPATH = new File(CONFIG_FILE_PATH);
+
+    /** Settings read from the config file, loaded on first use. */
+    private static Properties settings;
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not set. */
+    static String get(String key, String defaultValue) {
+        String override = System.getProperty("gitlet." + key);
+        if (override != null) {
+            return override;
+        }
+        return load().getProperty(key, defaultValue);
+    }
+
+    /** Returns the value of KEY as an int, or DEFAULTVALUE if it is
+     * not set or is not a number. */
+    static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, "").trim());
+        } catch (NumberFormatException excp) {
+            return defaultValue;
+        }
+    }
+
+    /** Sets KEY to VALUE and saves the config file. */
+    static void set(String key, String value) {
+        Properties props = load();
+        props.setProperty(key, value);
+        try (OutputStream out = new FileOutputStream(CONFIGFILEPATH)) {
+            props.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Forgets the cached settings so the next lookup rereads them. */
+    static synchronized void reload() {
+        settings = null;
+    }
+
+    /** Returns the settings, reading the config file if needed. */
+    private static synchronized Properties load() {
+        if (settings == null) {
+            settings = new Properties();
+            if (CONFIGFILEPATH.isFile()) {
+                try (InputStream in = new FileInputStream(CONFIGFILEPATH)) {
+                    settings.load(in);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return settings;
+    }
+}
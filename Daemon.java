@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/** Serves Gitlet commands for one repository from a long-running
+ * process, so a command pays for neither JVM startup nor cold caches.
+ * The daemon listens on the Unix-domain socket .gitlet/daemon.sock and
+ * runs one command at a time through Main.run, exactly as the one-shot
+ * command would, sending back what it prints. Commands run by other
+ * processes in the meantime are noticed by the metadata of the files
+ * the daemon keeps cached, which are then reread. The decoded HEAD,
+ * current branch, stage and branch map are kept the same way, through
+ * RepositorySession.
+ *
+ * A request is the client's working directory followed by a count of
+ * arguments and the arguments, each string as a length and its UTF-8
+ * bytes. The reply is a sequence of frames, each a channel byte and a
+ * length followed by that much output for the channel, ended by a
+ * frame on channel EXIT whose length is the exit status. A batch read
+ * from standard input is left to the client, which has the input.
+ * @author Megan Mehta
+ */
+
+public class Daemon {
+    /** Daemon socket path as a String. */
+    static final String SOCKET_PATH = ".gitlet/daemon.sock";
+    /** Daemon socket path File object. */
+    static final File SOCKETPATH = new File(SOCKET_PATH);
+
+    /** Frame channel of standard output. */
+    static final int STDOUT = 1;
+    /** Frame channel of standard error. */
+    static final int STDERR = 2;
+    /** Frame channel ending a reply, carrying the exit status. */
+    static final int EXIT = 0;
+
+    /** Exit status telling the client to run the command itself. */
+    static final int NOT_SERVED = -1;
+
+    /** Size of the buffer in front of each output channel. */
+    static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Files whose contents the daemon keeps in memory between
+     * commands. */
+    private static final File[] CACHED = {
+        Config.CONFIGFILEPATH, StatCache.STATFILEPATH
+    };
+
+    /** Metadata of each of CACHED as of the end of the last command. */
+    private final List<Object> stamps = new ArrayList<>();
+
+    /** Canonical path of the working directory served. */
+    private final String directory;
+
+    /** True once a stop request has been served. */
+    private boolean stopped;
+
+    private Daemon(String myDirectory) {
+        this.directory = myDirectory;
+    }
+
+    /** Serves commands for the repository in the current directory
+     * until asked to stop. Each command runs in an outermost session of
+     * its own, which writes its state when it finishes, rather than
+     * inside the session of the daemon command itself. */
+    static void serve() throws IOException {
+        if (!GitletRepo.checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        } else if (isRunning()) {
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        Files.deleteIfExists(SOCKETPATH.toPath());
+        Daemon daemon = new Daemon(
+                new File(GitletRepo.CURRENT_PATH).getCanonicalPath());
+        RepositorySession.closeAll();
+        RepositorySession.retain();
+        try (ServerSocketChannel server = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKETPATH.toPath()));
+            System.out.println("Daemon serving " + daemon.directory + ".");
+            System.out.flush();
+            while (!daemon.stopped) {
+                try (SocketChannel client = server.accept()) {
+                    daemon.handle(client);
+                } catch (IOException excp) {
+                    System.err.println("Lost a client: " + excp.getMessage());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(SOCKETPATH.toPath());
+        }
+    }
+
+    /** Asks the daemon serving the current directory to stop. */
+    static void stop() {
+        try (SocketChannel channel = connect()) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(channel));
+            Client.writeRequest(out,
+                    new File(GitletRepo.CURRENT_PATH).getCanonicalPath(),
+                    new String[] { "daemon", "stop" });
+            Client.copyReply(new DataInputStream(
+                    Channels.newInputStream(channel)));
+        } catch (IOException excp) {
+            System.out.println("No daemon is running.");
+        }
+    }
+
+    /** Returns true if a daemon answers on the socket. */
+    private static boolean isRunning() {
+        try {
+            connect().close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Returns a connection to the daemon socket. */
+    static SocketChannel connect() throws IOException {
+        return SocketChannel.open(
+                UnixDomainSocketAddress.of(SOCKETPATH.toPath()));
+    }
+
+    /** Reads one request from CLIENT, runs it and sends back the
+     * reply. */
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(client));
+        DataOutputStream reply = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+        String clientDirectory = Client.readString(in);
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = Client.readString(in);
+        }
+        if (!clientDirectory.equals(directory)
+                || args.length == 1 && args[0].equals("batch")) {
+            reply.writeByte(EXIT);
+            reply.writeInt(NOT_SERVED);
+            reply.flush();
+            return;
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FrameOutputStream(reply, STDOUT), OUTPUT_BUFFER));
+        PrintStream err = new PrintStream(new BufferedOutputStream(
+                new FrameOutputStream(reply, STDERR), OUTPUT_BUFFER));
+        PrintStream savedOut = System.out, savedErr = System.err;
+        System.setOut(out);
+        System.setErr(err);
+        int status = 0;
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                if (args.length == 2 && args[1].equals("stop")) {
+                    System.out.println("Daemon stopped.");
+                    stopped = true;
+                } else {
+                    System.out.println("A daemon is already running.");
+                }
+            } else {
+                invalidateChangedFiles();
+                Main.run(args);
+                RepositorySession.settle();
+            }
+        } catch (Throwable excp) {
+            System.err.print("Exception in thread \"main\" ");
+            excp.printStackTrace();
+            Config.reload();
+            StatCache.reload();
+            RepositorySession.forget();
+            status = 1;
+        } finally {
+            System.setOut(savedOut);
+            System.setErr(savedErr);
+            out.flush();
+            err.flush();
+            stamps.clear();
+            for (File file : CACHED) {
+                stamps.add(stamp(file));
+            }
+        }
+        reply.writeByte(EXIT);
+        reply.writeInt(status);
+        reply.flush();
+    }
+
+    /** Drops the cached contents of any of CACHED that another process
+     * has changed since the last command. */
+    private void invalidateChangedFiles() {
+        for (int i = 0; i < CACHED.length; i += 1) {
+            if (i >= stamps.size()
+                    || !Objects.equals(stamps.get(i), stamp(CACHED[i]))) {
+                Config.reload();
+                StatCache.reload();
+                return;
+            }
+        }
+    }
+
+    /** Returns a value that changes whenever FILE is rewritten, or null
+     * if it does not exist. */
+    static Object stamp(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return List.of(attrs.lastModifiedTime(), attrs.size(),
+                    String.valueOf(attrs.fileKey()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Writes everything written to it to a reply as frames on one
+     * channel. */
+    private static class FrameOutputStream extends OutputStream {
+        /** The reply. */
+        private final DataOutputStream reply;
+        /** The channel written to. */
+        private final int channel;
+
+        FrameOutputStream(DataOutputStream myReply, int myChannel) {
+            this.reply = myReply;
+            this.channel = myChannel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                reply.writeByte(channel);
+                reply.writeInt(len);
+                reply.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            reply.flush();
+        }
+    }
+}
@@ -6,15 +6,12 @@ import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 
-import static java.lang.Math.max;
-
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
@@ -22,13 +19,49 @@ import static java.lang.Math.max;
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** The algorithms Diff can use to find a common subsequence. */
+    public enum Algorithm {
+        /** Myers' algorithm: a longest common subsequence. */
+        MYERS,
+        /** Histogram diff: anchors the comparison on the rarest lines
+         *  common to both sequences, which keeps blank lines and braces
+         *  from pairing up across unrelated changes.  The result may be
+         *  slightly longer than a minimal edit, but reads better. */
+        HISTOGRAM
+    }
+
+    /** Lines occurring more often than this in a region are never used
+     *  as histogram anchors. */
+    private static final int MAX_CHAIN = 64;
+
+    /** Select ALGORITHM for subsequent comparisons.  The default is
+     *  MYERS. */
+    public void setAlgorithm(Algorithm algorithm) {
+        _algorithm = algorithm;
+        _common = null;
+    }
+
+    /** Return the algorithm in use. */
+    public Algorithm algorithm() {
+        return _algorithm;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
+        setSequences(seq1, seq2, new LineInterner());
+    }
+
+    /** Set the sequences currently being compared to the contents
+     *  of SEQ1 and SEQ2, numbering their lines with INTERNER.  Diffs
+     *  sharing an interner produce comparable line IDs. */
+    public void setSequences(Collection<String> seq1, Collection<String> seq2,
+                             LineInterner interner) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _ids1 = interner.intern(_lines1);
+        _ids2 = interner.intern(_lines2);
+        _common = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +81,10 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+        LineInterner interner = new LineInterner();
+        _ids1 = interner.intern(_lines1);
+        _ids2 = interner.intern(_lines2);
+        _common = null;
     }
 
     /** Return the first of the current sequences. */
@@ -62,6 +97,16 @@ public class Diff {
         return _lines2;
     }
 
+    /** Return the line IDs of the first of the current sequences. */
+    public int[] ids1() {
+        return _ids1;
+    }
+
+    /** Return the line IDs of the second of the current sequences. */
+    public int[] ids2() {
+        return _ids2;
+    }
+
     /** Returns sequence1().get(K). */
     public String get1(int k) {
         return _lines1.get(k);
@@ -76,76 +121,34 @@ public class Diff {
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
+        k1 = Math.min(k1, _ids1.length);
+        k2 = Math.min(k2, _ids2.length);
+        if (k1 <= 0 || k2 <= 0) {
             return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
+        } else if (k1 == _ids1.length && k2 == _ids2.length) {
+            return lls();
         }
-        return _lls[k1][k2];
+        return (k1 + k2 - editDistance(k1, k2)) / 2;
     }
 
-    /** Return the length of the longest common subsequence of the current
-     *  data subsequences. */
+    /** Return the length of the common subsequence of the current data
+     *  subsequences found by the current algorithm (the longest one, for
+     *  MYERS). */
     public int lls() {
         checkData();
-        return lls(_lines1.size(), _lines2.size());
+        int result = 0;
+        int[] common = commonSubsequence();
+        for (int k = 2; k < common.length; k += 3) {
+            result += common[k];
+        }
+        return result;
     }
 
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return Arrays.equals(_ids1, _ids2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -166,30 +169,31 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
+        checkData();
+        if (_common == null) {
+            ArrayList<Integer> matches = new ArrayList<>();
+            if (_algorithm == Algorithm.HISTOGRAM) {
+                histogram(matches);
             } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
+                lcs(0, _ids1.length, 0, _ids2.length, matches);
+            }
+            ArrayList<Integer> runs = new ArrayList<>();
+            for (int k = 0; k < matches.size(); k += 2) {
+                int n = runs.size();
+                if (n > 0 && runs.get(n - 3) + runs.get(n - 1)
+                        == matches.get(k)
+                    && runs.get(n - 2) + runs.get(n - 1)
+                        == matches.get(k + 1)) {
+                    runs.set(n - 1, runs.get(n - 1) + 1);
+                } else {
+                    runs.add(matches.get(k));
+                    runs.add(matches.get(k + 1));
+                    runs.add(1);
                 }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
             }
+            _common = toIntArr(runs);
         }
-        return toIntArr(resultList);
+        return _common;
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -232,45 +236,241 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
+    /** Append to MATCHES the positions (i1, i2) of the items of a longest
+     *  common subsequence of items [A0 .. A1-1] of the first sequence and
+     *  [B0 .. B1-1] of the second, in increasing order.  This is Myers'
+     *  linear-space algorithm: after trimming any common prefix and
+     *  suffix, it finds the middle snake of an optimal edit script and
+     *  recurses on the regions before and after it, so it needs
+     *  O(N + M) space and O((N + M) D) time for D differences. */
+    private void lcs(int a0, int a1, int b0, int b1,
+                     ArrayList<Integer> matches) {
+        while (a0 < a1 && b0 < b1 && _ids1[a0] == _ids2[b0]) {
+            matches.add(a0);
+            matches.add(b0);
+            a0 += 1; b0 += 1;
+        }
+        int suffix;
+        suffix = 0;
+        while (a0 < a1 && b0 < b1 && _ids1[a1 - 1] == _ids2[b1 - 1]) {
+            a1 -= 1; b1 -= 1;
+            suffix += 1;
+        }
+        if (a0 < a1 && b0 < b1) {
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            lcs(a0, a0 + snake[0], b0, b0 + snake[1], matches);
+            for (int k = 0; k < snake[2] - snake[0]; k += 1) {
+                matches.add(a0 + snake[0] + k);
+                matches.add(b0 + snake[1] + k);
+            }
+            lcs(a0 + snake[2], a1, b0 + snake[3], b1, matches);
+        }
+        for (int k = 0; k < suffix; k += 1) {
+            matches.add(a1 + k);
+            matches.add(b1 + k);
+        }
     }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
+    /** Append to MATCHES, in increasing order, the positions (i1, i2) of
+     *  the items of a common subsequence of the current sequences chosen by
+     *  histogram diff.  Each region of the two sequences is trimmed of its
+     *  common prefix and suffix; then the run of matching items containing
+     *  the line that occurs least often in the first sequence's region
+     *  (ties going to the longest run, and then to the one nearest the
+     *  middle, so that regions split evenly) is taken as an anchor, and the
+     *  regions before and after it are handled the same way.  Regions with
+     *  no common line occurring at most MAX_CHAIN times fall back to
+     *  Myers.  Work is kept on an explicit stack so that long sequences
+     *  cannot overflow the call stack. */
+    private void histogram(ArrayList<Integer> matches) {
+        int nids = 0;
+        for (int id : _ids1) {
+            nids = Math.max(nids, id + 1);
+        }
+        for (int id : _ids2) {
+            nids = Math.max(nids, id + 1);
+        }
+        int[] count = new int[nids];
+        int[] last = new int[nids];
+        int[] prev = new int[_ids1.length];
+        ArrayList<int[]> todo = new ArrayList<>();
+        todo.add(new int[] { 0, _ids1.length, 0, _ids2.length, -1 });
+        while (!todo.isEmpty()) {
+            int[] task = todo.remove(todo.size() - 1);
+            int a0 = task[0], a1 = task[1], b0 = task[2], b1 = task[3];
+            if (task[4] >= 0) {
+                for (int k = 0; k < task[4]; k += 1) {
+                    matches.add(a0 + k);
+                    matches.add(b0 + k);
+                }
+                continue;
+            }
+            while (a0 < a1 && b0 < b1 && _ids1[a0] == _ids2[b0]) {
+                matches.add(a0);
+                matches.add(b0);
+                a0 += 1; b0 += 1;
+            }
+            int suffix = 0;
+            while (a0 < a1 && b0 < b1 && _ids1[a1 - 1] == _ids2[b1 - 1]) {
+                a1 -= 1; b1 -= 1;
+                suffix += 1;
+            }
+            if (suffix > 0) {
+                todo.add(new int[] { a1, a1 + suffix, b1, b1 + suffix,
+                                     suffix });
+            }
+            if (a0 == a1 || b0 == b1) {
+                continue;
+            }
+
+            for (int i = a0; i < a1; i += 1) {
+                int id = _ids1[i];
+                prev[i] = count[id] == 0 ? -1 : last[id];
+                last[id] = i;
+                count[id] += 1;
+            }
+            int bestA = -1, bestB = -1, bestLen = 0, bestCount = MAX_CHAIN + 1;
+            for (int j = b0, next; j < b1; j = next) {
+                int id = _ids2[j];
+                next = j + 1;
+                if (count[id] == 0 || count[id] > MAX_CHAIN
+                    || count[id] > bestCount) {
+                    continue;
+                }
+                for (int i = last[id]; i >= a0; i = prev[i]) {
+                    int sa = i, sb = j, ea = i + 1, eb = j + 1;
+                    int runCount = count[id];
+                    while (sa > a0 && sb > b0
+                           && _ids1[sa - 1] == _ids2[sb - 1]) {
+                        sa -= 1; sb -= 1;
+                        runCount = Math.min(runCount, count[_ids1[sa]]);
+                    }
+                    while (ea < a1 && eb < b1 && _ids1[ea] == _ids2[eb]) {
+                        runCount = Math.min(runCount, count[_ids1[ea]]);
+                        ea += 1; eb += 1;
+                    }
+                    next = Math.max(next, eb);
+                    int len = ea - sa;
+                    if (runCount < bestCount
+                        || runCount == bestCount
+                           && (len > bestLen
+                               || len == bestLen
+                                  && Math.abs(2 * sb + len - b0 - b1)
+                                     < Math.abs(2 * bestB + bestLen
+                                                - b0 - b1))) {
+                        bestA = sa; bestB = sb;
+                        bestLen = len; bestCount = runCount;
+                    }
+                }
+            }
+            for (int i = a0; i < a1; i += 1) {
+                count[_ids1[i]] = 0;
+            }
+
+            if (bestA < 0) {
+                lcs(a0, a1, b0, b1, matches);
+            } else {
+                todo.add(new int[] { bestA + bestLen, a1, bestB + bestLen, b1,
+                                     -1 });
+                todo.add(new int[] { bestA, bestA + bestLen, bestB,
+                                     bestB + bestLen, bestLen });
+                todo.add(new int[] { a0, bestA, b0, bestB, -1 });
+            }
+        }
     }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
+    /** Return the middle snake of an optimal edit script between items
+     *  [A0 .. A1-1] of the first sequence and [B0 .. B1-1] of the second,
+     *  both non-empty, as {x0, y0, x1, y1}: the snake runs diagonally from
+     *  offsets (x0, y0) to (x1, y1) relative to (A0, B0). */
+    private int[] middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int dmax = (n + m + 1) / 2;
+        int off = dmax + 1;
+        int[] vf = new int[2 * dmax + 3];
+        int[] vb = new int[2 * dmax + 3];
+        for (int d = 0; d <= dmax; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                    x = vf[off + k + 1];
+                } else {
+                    x = vf[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m && _ids1[a0 + x] == _ids2[b0 + y]) {
+                    x += 1; y += 1;
+                }
+                vf[off + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1
+                    && x + vb[off + kb] >= n) {
+                    return new int[] { x0, y0, x, y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1])) {
+                    x = vb[off + k + 1];
+                } else {
+                    x = vb[off + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _ids1[a1 - 1 - x] == _ids2[b1 - 1 - y]) {
+                    x += 1; y += 1;
+                }
+                vb[off + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + vf[off + kf] >= n) {
+                    return new int[] { n - x, m - y, n - x0, m - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
     }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+    /** Return the length of a shortest edit script between the first K1
+     *  items of the first sequence and the first K2 of the second. */
+    private int editDistance(int k1, int k2) {
+        int off = k1 + k2 + 1;
+        int[] v = new int[2 * off + 1];
+        for (int d = 0; d <= k1 + k2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[off + k - 1] < v[off + k + 1])) {
+                    x = v[off + k + 1];
+                } else {
+                    x = v[off + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < k1 && y < k2 && _ids1[x] == _ids2[y]) {
+                    x += 1; y += 1;
+                }
+                v[off + k] = x;
+                if (x >= k1 && y >= k2) {
+                    return d;
+                }
+            }
+        }
+        return k1 + k2;
     }
 
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The line IDs of the sequences being compared, so lines are
+     *  compared as ints rather than Strings. */
+    private int[] _ids1, _ids2;
+
+    /** The algorithm used by commonSubsequence(). */
+    private Algorithm _algorithm = Algorithm.MYERS;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** The cached result of commonSubsequence(), or null. */
+    private int[] _common;
 
 }
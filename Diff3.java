@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A line-level three-way merge. Given a common base and two edited
+ * versions of it, the changes each side made relative to the base are
+ * found with Diff and applied together. Changes touching disjoint
+ * parts of the base merge cleanly; where both sides changed the same
+ * lines differently, both versions are kept between conflict markers.
+ * All three files are numbered with one LineInterner, so the merge
+ * itself compares ints rather than Strings.
+ * @author Megan Mehta
+ */
+
+public class Diff3 {
+    /** Line IDs shared by the three sequences. */
+    private final LineInterner interner = new LineInterner();
+
+    /** The three sequences being merged, as line IDs. */
+    private int[] base, ours, theirs;
+
+    /** Number of conflicts in the last merge. */
+    private int conflicts;
+
+    /** Returns the merge of OURS and THEIRS, two edited versions of
+     * BASE. Lines should keep their terminators, as from
+     * BlobDelta.splitLines. Conflicting regions are marked with
+     * OURSLABEL and THEIRSLABEL. */
+    public List<String> merge(List<String> baseLines, List<String> oursLines,
+                              List<String> theirsLines, String oursLabel,
+                              String theirsLabel) {
+        Diff diff = new Diff();
+        diff.setSequences(baseLines, oursLines, interner);
+        base = diff.ids1();
+        ours = diff.ids2();
+        List<int[]> oursHunks = hunks(diff.diffs());
+        diff.setSequences(baseLines, theirsLines, interner);
+        theirs = diff.ids2();
+        List<int[]> theirsHunks = hunks(diff.diffs());
+
+        conflicts = 0;
+        List<String> result = new ArrayList<>();
+        int i = 0, j = 0, done = 0;
+        while (i < oursHunks.size() || j < theirsHunks.size()) {
+            int lo = Math.min(
+                    i < oursHunks.size() ? oursHunks.get(i)[0]
+                            : Integer.MAX_VALUE,
+                    j < theirsHunks.size() ? theirsHunks.get(j)[0]
+                            : Integer.MAX_VALUE);
+            int hi = lo;
+            List<int[]> oursChunk = new ArrayList<>();
+            List<int[]> theirsChunk = new ArrayList<>();
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                while (i < oursHunks.size()
+                        && overlaps(oursHunks.get(i), lo, hi)) {
+                    hi = Math.max(hi, oursHunks.get(i)[1]);
+                    oursChunk.add(oursHunks.get(i));
+                    i += 1;
+                    grew = true;
+                }
+                while (j < theirsHunks.size()
+                        && overlaps(theirsHunks.get(j), lo, hi)) {
+                    hi = Math.max(hi, theirsHunks.get(j)[1]);
+                    theirsChunk.add(theirsHunks.get(j));
+                    j += 1;
+                    grew = true;
+                }
+            }
+
+            appendLines(result, base, done, lo);
+            int[] oursVersion = version(ours, oursChunk, lo, hi);
+            int[] theirsVersion = version(theirs, theirsChunk, lo, hi);
+            if (theirsChunk.isEmpty()
+                    || Arrays.equals(oursVersion, theirsVersion)) {
+                appendLines(result, oursVersion, 0, oursVersion.length);
+            } else if (oursChunk.isEmpty()) {
+                appendLines(result, theirsVersion, 0, theirsVersion.length);
+            } else {
+                conflicts += 1;
+                result.add("<<<<<<< " + oursLabel + "\n");
+                appendSection(result, oursVersion);
+                result.add("=======\n");
+                appendSection(result, theirsVersion);
+                result.add(">>>>>>> " + theirsLabel + "\n");
+            }
+            done = hi;
+        }
+        appendLines(result, base, done, base.length);
+        return result;
+    }
+
+    /** Returns the number of conflicts found by the last merge. */
+    public int conflicts() {
+        return conflicts;
+    }
+
+    /** Returns the edits in EDITS, as from Diff.diffs(), as hunks of
+     * {base start, base end, side start, side end}. */
+    private static List<int[]> hunks(int[] edits) {
+        List<int[]> hunks = new ArrayList<>();
+        for (int k = 0; k < edits.length; k += 4) {
+            hunks.add(new int[] {
+                edits[k], edits[k] + edits[k + 1],
+                edits[k + 2], edits[k + 2] + edits[k + 3]
+            });
+        }
+        return hunks;
+    }
+
+    /** Returns true if HUNK, which starts no earlier than LO, touches the
+     * base lines [LO, HI) of a chunk. Insertions at either end of a
+     * chunk count, since their order against it would be ambiguous. */
+    private static boolean overlaps(int[] hunk, int lo, int hi) {
+        return hunk[0] < hi
+                || (hunk[0] == hi && (hunk[0] == hunk[1] || lo == hi));
+    }
+
+    /** Returns base lines [LO, HI) as changed by HUNKS of SIDE. */
+    private int[] version(int[] side, List<int[]> hunks, int lo, int hi) {
+        int size = hi - lo;
+        for (int[] hunk : hunks) {
+            size += (hunk[3] - hunk[2]) - (hunk[1] - hunk[0]);
+        }
+        int[] result = new int[size];
+        int n = 0, p = lo;
+        for (int[] hunk : hunks) {
+            for (; p < hunk[0]; p += 1, n += 1) {
+                result[n] = base[p];
+            }
+            for (int k = hunk[2]; k < hunk[3]; k += 1, n += 1) {
+                result[n] = side[k];
+            }
+            p = hunk[1];
+        }
+        for (; p < hi; p += 1, n += 1) {
+            result[n] = base[p];
+        }
+        return result;
+    }
+
+    /** Appends the lines with IDs SEQ[FROM .. TO-1] to RESULT. */
+    private void appendLines(List<String> result, int[] seq, int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            result.add(interner.line(seq[k]));
+        }
+    }
+
+    /** Appends the lines with IDs SEQ to RESULT as one side of a
+     * conflict, ending the last line if it has no terminator. */
+    private void appendSection(List<String> result, int[] seq) {
+        appendLines(result, seq, 0, seq.length);
+        if (seq.length > 0 && !result.get(result.size() - 1).endsWith("\n")) {
+            result.set(result.size() - 1,
+                    result.get(result.size() - 1) + "\n");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+
+/** Writes repository files so that a crash never leaves one half
+ * written, and never leaves a ref naming an object that was lost.
+ * Every object and state file is written under a temporary name in
+ * its directory and then renamed over its real name. How much is
+ * forced to disk is set by the "durability" setting:
+ *   none  - nothing is synced; the operating system decides.
+ *   batch - objects are synced as a group just before the state files
+ *           that refer to them, once per command or batch checkpoint.
+ *   full  - every object is synced as it is written, and every state
+ *           file before and after it is renamed into place.
+ * In every mode, objects are in place before any state file naming
+ * them. A shard directory made for a new object is synced into its
+ * parent along with the object, so the object cannot be lost with it.
+ * @author Megan Mehta
+ */
+
+public class Durability {
+    /** Names of the durability modes, as set in the config. */
+    enum Mode {
+        /** Never sync. */
+        NONE,
+        /** Sync objects in groups, ahead of the state files. */
+        BATCH,
+        /** Sync everything as it is written. */
+        FULL
+    }
+
+    /** Objects renamed into place and directories made, but not yet
+     * synced, in BATCH mode. */
+    private static final LinkedHashSet<Path> PENDING = new LinkedHashSet<>();
+
+    /** Returns the durability mode set in the config. */
+    static Mode mode() {
+        try {
+            return Mode.valueOf(Config.get("durability", "none").trim()
+                    .toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException excp) {
+            return Mode.NONE;
+        }
+    }
+
+    /** Returns a temporary file in the directory of TARGET, unique to
+     * this process and thread. */
+    static File tempFor(File target) {
+        return new File(target.getAbsoluteFile().getParentFile(),
+                "." + target.getName() + ".tmp-"
+                + ProcessHandle.current().pid() + "-"
+                + Thread.currentThread().getId());
+    }
+
+    /** Renames the object file TEMP, already written, to TARGET,
+     * replacing any file there, and syncs it as the mode requires. */
+    static void publish(File temp, File target) {
+        Mode mode = mode();
+        try {
+            if (mode == Mode.FULL) {
+                force(temp.toPath());
+            }
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            if (mode == Mode.FULL) {
+                force(parentOf(target.toPath()));
+            } else if (mode == Mode.BATCH) {
+                synchronized (PENDING) {
+                    PENDING.add(target.toPath());
+                }
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Records that directory DIR was just made, so that its entry in
+     * its parent is synced as the mode requires: at once in FULL mode,
+     * or with the next group of objects in BATCH mode. */
+    static void created(File dir) {
+        Mode mode = mode();
+        try {
+            if (mode == Mode.FULL) {
+                force(parentOf(dir.toPath()));
+            } else if (mode == Mode.BATCH) {
+                synchronized (PENDING) {
+                    PENDING.add(dir.toPath());
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true if FILE is waiting to be synced. */
+    static boolean isPending(File file) {
+        synchronized (PENDING) {
+            return PENDING.contains(file.toPath());
+        }
+    }
+
+    /** Replaces each state file in FILES with its contents, after
+     * syncing every object written so far if the mode calls for it.
+     * Each file is written to a temporary file, and all of them are
+     * synced together before any is renamed into place. */
+    static void replaceAll(Map<File, byte[]> files) {
+        Mode mode = mode();
+        if (mode != Mode.NONE) {
+            syncPending();
+        }
+        LinkedHashMap<File, File> temps = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<File, byte[]> entry : files.entrySet()) {
+                File temp = tempFor(entry.getKey());
+                temps.put(entry.getKey(), temp);
+                try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                    out.write(entry.getValue());
+                }
+                if (mode != Mode.NONE) {
+                    force(temp.toPath());
+                }
+            }
+            LinkedHashSet<Path> dirs = new LinkedHashSet<>();
+            for (Map.Entry<File, File> entry : temps.entrySet()) {
+                Files.move(entry.getValue().toPath(),
+                        entry.getKey().toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                dirs.add(parentOf(entry.getKey().toPath()));
+            }
+            if (mode != Mode.NONE) {
+                for (Path dir : dirs) {
+                    force(dir);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            for (File temp : temps.values()) {
+                temp.delete();
+            }
+        }
+    }
+
+    /** Syncs every object published and directory made but not yet
+     * synced, and the directories holding them. */
+    static void syncPending() {
+        LinkedHashSet<Path> files;
+        synchronized (PENDING) {
+            files = new LinkedHashSet<>(PENDING);
+            PENDING.clear();
+        }
+        LinkedHashSet<Path> dirs = new LinkedHashSet<>();
+        try {
+            for (Path file : files) {
+                force(file);
+                dirs.add(parentOf(file));
+            }
+            for (Path dir : dirs) {
+                force(dir);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Forces the file or directory at PATH to disk. */
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /** Returns the directory holding PATH. */
+    private static Path parentOf(Path path) {
+        return path.toAbsolutePath().getParent();
+    }
+}
@@ -2,10 +2,25 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import static gitlet.Utils.*;
 
@@ -103,13 +118,14 @@ public class GitletRepo {
             new File(BRANCH_PATH).mkdir();
             new File(BRANCH_FILE_PATH).createNewFile();
 
+            CommitStore.INDEXPATH.mkdir();
+            CommitStore.INDEXFILEPATH.createNewFile();
 
             TreeMap<String, String> blankBlob = new TreeMap<>();
 
             Commit initialCommit = new Commit(
                     "initial commit", null, blankBlob, BRANCHNAME);
-            Utils.writeObject(Utils.join(COMMIT_PATH,
-                    initialCommit.getMySHA() + ".txt"), initialCommit);
+            writeCommit(initialCommit);
 
             String head = "";
             head = initialCommit.getMySHA();
@@ -122,28 +138,40 @@ public class GitletRepo {
 
             serializeHSB(head, stage, branchMap);
 
-            Utils.writeContents(CURRBRANCHFILEPATH, BRANCHNAME);
+            writeCurrBranch(BRANCHNAME);
         }
 
     }
 
-    public static void add(String fileName) {
+    /** Stages every file named by FILEARGS, each a file name, a glob
+     * matched against the files in the working directory, or "." for
+     * all of them. Blobs that are not already stored are hashed and
+     * written in parallel, and the stage is written once at the end. */
+    public static void add(String... fileArgs) {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
 
-        File addFile = Utils.join(CURRENT_PATH, fileName);
-        String blobHash;
         Stage stage = readStage();
+        Commit curr = currCommit();
+        TreeSet<String> fileNames = expandFileArgs(fileArgs);
+
+        TreeMap<String, String> blobHashes = new TreeMap<>();
+        List<String> toStore = new ArrayList<>();
+        for (String fileName : fileNames) {
+            String blobHash = StatCache.cachedHash(
+                    Utils.join(CURRENT_PATH, fileName));
+            if (blobHash != null && ObjectStore.blobExists(blobHash)) {
+                blobHashes.put(fileName, blobHash);
+            } else {
+                toStore.add(fileName);
+            }
+        }
+        storeBlobs(toStore, stage, curr, blobHashes);
 
-        if (addFile.exists()) {
-            blobHash = Utils.sha1(Utils.readContents(addFile));
-
-            Utils.writeContents(Utils.join(BLOBPATH,
-                    blobHash + ".txt"), Utils.readContents(addFile));
-
-            Commit curr = currCommit();
+        for (String fileName : blobHashes.keySet()) {
+            String blobHash = blobHashes.get(fileName);
             if (curr.getBlobs().get(fileName) != null
                     && curr.getBlobs().get(fileName).equals(blobHash)) {
                 if (stage.getRemovedFiles().containsKey(fileName)) {
@@ -155,14 +183,88 @@ public class GitletRepo {
             } else {
                 stage.addToFile(fileName, blobHash);
             }
-        } else {
-            System.out.println("File does not exist.");
         }
 
         writeStage(stage);
     }
 
+    /** Returns the names of the working files named by FILEARGS, as for
+     * add, printing a message for each argument that names nothing. */
+    static TreeSet<String> expandFileArgs(String... fileArgs) {
+        TreeSet<String> fileNames = new TreeSet<>();
+        List<String> cwdFiles = null;
+        for (String fileArg : fileArgs) {
+            if (!fileArg.equals(".") && !fileArg.matches(".*[*?\\[{].*")) {
+                if (Utils.join(CURRENT_PATH, fileArg).isFile()) {
+                    fileNames.add(fileArg);
+                } else {
+                    System.out.println("File does not exist.");
+                }
+                continue;
+            }
+            if (cwdFiles == null) {
+                cwdFiles = Utils.plainFilenamesIn(CURRENT_PATH);
+            }
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+                    "glob:" + (fileArg.equals(".") ? "*" : fileArg));
+            boolean matched = false;
+            for (String cwdFile : cwdFiles) {
+                if (matcher.matches(Paths.get(cwdFile))) {
+                    fileNames.add(cwdFile);
+                    matched = true;
+                }
+            }
+            if (!matched) {
+                System.out.println("File does not exist.");
+            }
+        }
+        return fileNames;
+    }
+
+    /** Stores the blobs of working files FILENAMES on a pool of at most
+     * "threads" workers, putting each file's blob SHA in BLOBHASHES.
+     * Each blob may be stored as a delta against the version of the file
+     * in STAGE or CURR. */
+    static void storeBlobs(List<String> fileNames, Stage stage, Commit curr,
+                           TreeMap<String, String> blobHashes) {
+        if (fileNames.isEmpty()) {
+            return;
+        }
+        String[] previous = new String[fileNames.size()];
+        for (int i = 0; i < previous.length; i += 1) {
+            previous[i] = stage.getAddedFiles().get(fileNames.get(i));
+            if (previous[i] == null) {
+                previous[i] = curr.getBlobs().get(fileNames.get(i));
+            }
+        }
+        String[] hashes = new String[fileNames.size()];
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Config.getInt(
+                "threads", Runtime.getRuntime().availableProcessors())));
+        try {
+            pool.submit(() -> IntStream.range(0, hashes.length).parallel()
+                    .forEach(i -> hashes[i] = ObjectStore.writeBlob(
+                            Utils.join(CURRENT_PATH, fileNames.get(i)),
+                            previous[i]))).get();
+        } catch (InterruptedException | ExecutionException excp) {
+            Throwable cause = excp.getCause() == null ? excp : excp.getCause();
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < hashes.length; i += 1) {
+            blobHashes.put(fileNames.get(i), hashes[i]);
+            StatCache.record(Utils.join(CURRENT_PATH, fileNames.get(i)),
+                    hashes[i]);
+        }
+    }
+
     public static void commit(String msg) {
+        commit(msg, null);
+    }
+
+    /** Commits the stage with message MSG. SECONDPARENT is the head of the
+     * branch being merged in, or null for an ordinary commit. */
+    static void commit(String msg, Commit secondParent) {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
@@ -170,7 +272,7 @@ public class GitletRepo {
 
         Stage stage = readStage();
         TreeMap<String, String> branchMap = readBranchMap();
-        String currBranch = Utils.readContentsAsString(CURRBRANCHPATH);
+        String currBranch = readCurrBranch();
 
         if (stage.getAddedFiles().isEmpty()
             && stage.getRemovedFiles().isEmpty()) {
@@ -196,7 +298,7 @@ public class GitletRepo {
 
                 stage.clear();
 
-                Commit newCommit = new Commit(msg, curr,
+                Commit newCommit = new Commit(msg, curr, secondParent,
                         blobCopies, currBranch);
 
                 String head = newCommit.getMySHA();
@@ -207,10 +309,9 @@ public class GitletRepo {
                     branchMap.put(currBranch, head);
                 }
 
+                writeCommit(newCommit);
                 serializeHSB(head, stage, branchMap);
-                Utils.writeContents(CURRBRANCHFILEPATH, currBranch);
-                Utils.writeObject(Utils.join(COMMIT_PATH,
-                        newCommit.getMySHA() + ".txt"), newCommit);
+                writeCurrBranch(currBranch);
             }
         }
     }
@@ -246,11 +347,16 @@ public class GitletRepo {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        String currBranch = Utils.readContentsAsString(CURRBRANCHPATH);
+        String currBranch = readCurrBranch();
         Commit curr = currCommit();
         while (curr != null) {
             System.out.println("===");
             System.out.println("commit " + curr.getMySHA());
+            if (curr.getSecondParentSHA() != null) {
+                System.out.println("Merge: "
+                        + curr.getParentSHA().substring(0, 7) + " "
+                        + curr.getSecondParentSHA().substring(0, 7));
+            }
             System.out.println("Date: " + curr.getTimestamp());
             System.out.println(curr.getMsg());
             System.out.println();
@@ -263,21 +369,57 @@ public class GitletRepo {
         }
     }
 
-    public static void globalLog() {
+    /** Prints every commit ever made, newest first. OPTIONS may hold
+     * "--since DATE" and "--until DATE" to print only commits made in
+     * that range, and "-n COUNT" to stop after COUNT commits. A DATE is
+     * either yyyy-MM-dd, taken in the local time zone, or an ISO-8601
+     * date and time. */
+    public static void globalLog(String... options) {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        int limit = Integer.MAX_VALUE;
+        try {
+            for (int i = 0; i < options.length; i += 2) {
+                if (i + 1 >= options.length) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                } else if (options[i].equals("--since")) {
+                    since = parseDate(options[i + 1], false);
+                } else if (options[i].equals("--until")) {
+                    until = parseDate(options[i + 1], true);
+                } else if (options[i].equals("-n")) {
+                    limit = Integer.parseInt(options[i + 1]);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        CommitLog.print(since, until, limit);
+    }
 
-        for (File f: COMMITPATH.listFiles()) {
-            Commit curr = Utils.readObject(f, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + curr.getMySHA());
-            System.out.println("Date: " + curr.getTimestamp());
-            System.out.println(curr.getMsg());
-            System.out.println();
+    /** Returns DATE, as given to global-log, in epoch seconds. A date
+     * without a time stands for the start of that day, or for its end
+     * if ENDOFDAY. */
+    private static long parseDate(String date, boolean endOfDay) {
+        if (date.length() == "yyyy-MM-dd".length()) {
+            LocalDate day = LocalDate.parse(date);
+            return (endOfDay ? day.plusDays(1) : day)
+                    .atStartOfDay(ZoneId.systemDefault()).toEpochSecond()
+                    - (endOfDay ? 1 : 0);
+        }
+        try {
+            return OffsetDateTime.parse(date).toEpochSecond();
+        } catch (DateTimeParseException excp) {
+            return LocalDateTime.parse(date).atZone(ZoneId.systemDefault())
+                    .toEpochSecond();
         }
-        return;
     }
 
     public static void find(String msg) {
@@ -285,20 +427,28 @@ public class GitletRepo {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
+        printMatches(MessageIndex.findMessage(msg));
+    }
 
-        boolean flag = false;
-        for (File f: COMMITPATH.listFiles()) {
-            Commit curr = Utils.readObject(f, Commit.class);
-            if (curr.getMsg().equals(msg)) {
-                System.out.println(curr.getMySHA());
-                flag = true;
-            }
+    /** Prints the IDs of the commits whose messages contain every one of
+     * WORDS, in any case. */
+    public static void findWords(String... words) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
         }
+        printMatches(MessageIndex.findWords(words));
+    }
 
-        if (!flag) {
+    /** Prints each of the commit IDs MATCHES, or a message if there are
+     * none. */
+    private static void printMatches(List<String> matches) {
+        if (matches.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
-        return;
+        for (String commitID : matches) {
+            System.out.println(commitID);
+        }
     }
 
     public static void status() {
@@ -355,37 +505,33 @@ public class GitletRepo {
         }
 
         System.out.println("=== Modifications Not Staged For Commit ===");
-        if (!cwdFiles.isEmpty()) {
-            for (String cwdFile : cwdFiles) {
-                String cwdFileSHA = Utils.sha1(cwdFile);
-                String blobSHA = (String) currCommit.getBlobs().get(cwdFile);
-
-                if (blobNames.isEmpty()) {
-                    System.out.println();
-                } else {
-                    if (blobNames.contains(cwdFile)) {
-                        if (!blobSHA.equals(cwdFileSHA)
-                                && !stagedFilesSorted.contains(cwdFile)
-                                && !stageFilesRemovedSorted.contains(cwdFile)) {
-                            System.out.println(cwdFile + "(modified)");
-                        }
-                    } else if (!blobSHA.equals(cwdFileSHA)
-                            && stagedFilesSorted.contains(cwdFile)) {
-                        System.out.println(cwdFile + "(modified)");
-                    }
-                }
+        TreeSet<String> cwdFileSet = new TreeSet<>(cwdFiles);
+        TreeMap<String, String> modifications = new TreeMap<>();
+        for (String fileName : blobNames) {
+            if (stage.getAddedFiles().containsKey(fileName)
+                    || stage.getRemovedFiles().containsKey(fileName)) {
+                continue;
             }
-        } else {
-            for (String fileName : blobNames) {
-                if (!cwdFiles.contains(fileName)
-                        && !stageFilesRemovedSorted.contains(fileName)) {
-                    System.out.println(fileName + "(deleted)");
-                } else if (stagedFilesSorted.contains(fileName)
-                        && !cwdFiles.contains(fileName)) {
-                    System.out.println(fileName);
-                }
+            if (!cwdFileSet.contains(fileName)) {
+                modifications.put(fileName, "(deleted)");
+            } else if (!ObjectStore.sameContents(
+                    Utils.join(CURRENT_PATH, fileName),
+                    currCommit.getBlobs().get(fileName))) {
+                modifications.put(fileName, "(modified)");
+            }
+        }
+        for (String fileName : stage.getAddedFiles().keySet()) {
+            if (!cwdFileSet.contains(fileName)) {
+                modifications.put(fileName, "(deleted)");
+            } else if (!ObjectStore.sameContents(
+                    Utils.join(CURRENT_PATH, fileName),
+                    stage.getAddedFiles().get(fileName))) {
+                modifications.put(fileName, "(modified)");
             }
         }
+        for (String fileName : modifications.keySet()) {
+            System.out.println(fileName + modifications.get(fileName));
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
         for (String cwdFile : cwdFiles) {
@@ -427,10 +573,7 @@ public class GitletRepo {
                      TreeMap<String, String> branchMap, String head) {
         Commit curr = currCommit();
         if (curr.getBlobs().containsKey(fileName)) {
-            String fileContents = Utils.readContentsAsString(Utils.join
-                    (BLOBPATH, curr.getBlobs().get(fileName) + ".txt"));
-            Utils.writeContents(Utils.join
-                    (CURRENT_PATH, fileName), fileContents);
+            writeWorkingFile(fileName, curr.getBlobs().get(fileName));
         } else {
             System.out.println("File does not exist in that commit.");
         }
@@ -438,36 +581,21 @@ public class GitletRepo {
 
     public static void checkout2(String commitID, String fileName,
                  Stage stage, TreeMap<String, String> branchMap, String head) {
-        boolean flag = false;
-
-        if (commitID.length() == 8) {
-            commitID = findShortUID(commitID);
+        commitID = findShortUID(commitID);
+        if (commitID == null) {
+            return;
         }
 
-        if (!Utils.plainFilenamesIn(COMMIT_PATH).contains(commitID + ".txt")) {
+        Commit curr = CommitStore.read(commitID);
+        if (curr == null) {
             System.out.println("No commit with that id exists.");
             return;
         }
 
-        for (File f : COMMITPATH.listFiles()) {
-            Commit curr = Utils.readObject(f, Commit.class);
-
-            if (curr.getMySHA().equals(commitID)) {
-                flag = true;
-                if (curr.getBlobs().containsKey(fileName)) {
-                    String fileContents = Utils.readContentsAsString(Utils.join
-                            (BLOBPATH, curr.getBlobs().get(fileName) + ".txt"));
-                    Utils.writeContents(
-                        Utils.join(CURRENT_PATH, fileName), fileContents);
-                } else {
-                    System.out.println(
-                        "File does not exist in that commit.");
-                }
-                break;
-            }
-        }
-        if (!flag) {
-            System.out.println("No commit with that id exists.");
+        if (curr.getBlobs().containsKey(fileName)) {
+            writeWorkingFile(fileName, curr.getBlobs().get(fileName));
+        } else {
+            System.out.println("File does not exist in that commit.");
         }
     }
 
@@ -476,47 +604,17 @@ public class GitletRepo {
         if (!branchMap.containsKey(branchNameArg)) {
             System.out.println("No such branch exists.");
         } else {
-            Commit branchHeadCommit = Utils.readObject(Utils.join
-                    (COMMIT_PATH, branchMap.get(branchNameArg)
-                            + ".txt"), Commit.class);
-            String currBranch = Utils.readContentsAsString(CURRBRANCHFILEPATH);
+            Commit branchHeadCommit = CommitStore.read(
+                    branchMap.get(branchNameArg));
+            Commit currCommit = currCommit();
+            String currBranch = readCurrBranch();
             if (branchNameArg.equals(currBranch)) {
                 System.out.println("No need to checkout the current branch.");
-            } else {
-                for (String fileName: plainFilenamesIn(CURRENT_PATH)) {
-                    if (!currCommit().getBlobs().containsKey(fileName)
-                            && !stage.getAddedFiles().containsKey(fileName)
-                            && !stage.getRemovedFiles().containsKey(fileName)
-                            && branchHeadCommit.getBlobs().
-                            containsKey(fileName)) {
-                        System.out.println("There is an untracked file in the"
-                            + " way; delete it, or add and commit it first.");
-                        break;
-                    }
-                }
-            }
-            List<String> branchFiles = new ArrayList<>(branchHeadCommit.
-                getBlobs().keySet());
-            List<String> cwdFiles = Utils.plainFilenamesIn(CURRENT_PATH);
-            for (String cwdFile : cwdFiles) {
-                if (!branchFiles.contains(cwdFile)) {
-                    Utils.restrictedDelete(cwdFile);
-                } else {
-                    String fileContents = Utils.readContentsAsString(Utils.join
-                            (BLOBPATH, branchHeadCommit.getBlobs().
-                                    get(cwdFile) + ".txt"));
-                    Utils.writeContents(Utils.join
-                            (CURRENT_PATH, cwdFile), fileContents);
-                }
+                return;
             }
-            for (String branchFile: branchFiles) {
-                if (!cwdFiles.contains(branchFile)) {
-                    String fileContents = Utils.readContentsAsString(Utils.join
-                            (BLOBPATH, branchHeadCommit.getBlobs().
-                                    get(branchFile) + ".txt"));
-                    Utils.writeContents(Utils.join
-                            (CURRENT_PATH, branchFile), fileContents);
-                }
+            if (!TreeUpdate.apply(currCommit.getBlobs(),
+                    branchHeadCommit.getBlobs(), stage)) {
+                return;
             }
             stage.clear();
             head = branchHeadCommit.getMySHA();
@@ -528,11 +626,22 @@ public class GitletRepo {
                 branchMap.put(branchNameArg, head);
             }
             writeCommit(branchHeadCommit);
-            Utils.writeContents(CURRBRANCHFILEPATH, currBranch);
+            writeCurrBranch(currBranch);
             serializeHSB(head, stage, branchMap);
         }
     }
 
+    /** Overwrites working file FILENAME with the contents of blob
+     * BLOBSHA, unless it already holds exactly that blob, and records
+     * it in the stat cache. */
+    static void writeWorkingFile(String fileName, String blobSHA) {
+        File file = Utils.join(CURRENT_PATH, fileName);
+        if (!ObjectStore.sameContents(file, blobSHA)) {
+            Utils.writeContents(file, ObjectStore.readBlob(blobSHA));
+        }
+        StatCache.record(file, blobSHA);
+    }
+
     public static void branch(String branchNameArg) {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
@@ -576,112 +685,327 @@ public class GitletRepo {
             return;
         }
 
+        commitID = findShortUID(commitID);
+        if (commitID == null) {
+            return;
+        }
+
         TreeMap<String, String> branchMap = readBranchMap();
-        Commit currCommit = null;
+        Commit currCommit = CommitStore.read(commitID);
         Stage stage = readStage();
-        boolean flag = false;
 
-        for (File f : COMMITPATH.listFiles()) {
-            Commit curr = Utils.readObject(f, Commit.class);
-            if (curr.getMySHA().equals(commitID)) {
-                currCommit = curr;
-                flag = true;
-                break;
+        if (currCommit == null) {
+            System.out.println("No commit with that id exists.");
+        } else {
+            Commit headCommit = currCommit();
+            if (!TreeUpdate.apply(headCommit.getBlobs(),
+                    currCommit.getBlobs(), stage, true)) {
+                return;
             }
+
+            stage.clear();
+            branchMap.put(readCurrBranch(), commitID);
+            serializeHSB(commitID, stage, branchMap);
         }
+    }
 
-        if (!flag) {
-            System.out.println("No commit with that id exists.");
-        } else {
-            for (String fileName: plainFilenamesIn(CURRENT_PATH)) {
-                if (!currCommit().getBlobs().containsKey(fileName)
-                        && !stage.getAddedFiles().containsKey(fileName)
-                        && !stage.getRemovedFiles().containsKey(fileName)
-                        && currCommit.getBlobs().containsKey(fileName)) {
-                    System.out.println("There is an untracked file in the "
-                            + "way; delete it, or add and commit it first.");
-                    break;
+    public static void merge(String branchNameArg) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+
+        Stage stage = readStage();
+        TreeMap<String, String> branchMap = readBranchMap();
+        String currBranch = readCurrBranch();
+
+        if (!stage.getAddedFiles().isEmpty()
+                || !stage.getRemovedFiles().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        } else if (!branchMap.containsKey(branchNameArg)) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        } else if (branchNameArg.equals(currBranch)) {
+            System.out.println("Cannot merge a branch with itself.");
+            return;
+        }
+
+        Commit curr = currCommit();
+        Commit given = CommitStore.read(branchMap.get(branchNameArg));
+        CommitGraph graph = CommitGraph.load();
+        int currPos = graph.position(curr.getMySHA());
+        int givenPos = graph.position(given.getMySHA());
+        if (currPos == CommitGraph.NONE || givenPos == CommitGraph.NONE) {
+            CommitGraph.rebuild();
+            graph = CommitGraph.load();
+            currPos = graph.position(curr.getMySHA());
+            givenPos = graph.position(given.getMySHA());
+            if (currPos == CommitGraph.NONE
+                    || givenPos == CommitGraph.NONE) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+        }
+
+        if (graph.isAncestor(givenPos, currPos)) {
+            System.out.println(
+                    "Given branch is an ancestor of the current branch.");
+            return;
+        } else if (graph.isAncestor(currPos, givenPos)) {
+            if (TreeUpdate.apply(curr.getBlobs(), given.getBlobs(), stage)) {
+                branchMap.put(currBranch, given.getMySHA());
+                serializeHSB(given.getMySHA(), stage, branchMap);
+                System.out.println("Current branch fast-forwarded.");
+            }
+            return;
+        }
+
+        int splitPos = graph.mergeBase(currPos, givenPos);
+        TreeMap<String, String> split = splitPos == CommitGraph.NONE
+                ? new TreeMap<>()
+                : CommitStore.read(graph.sha(splitPos)).getBlobs();
+        if (mergeFiles(split, curr.getBlobs(), given.getBlobs(), stage)) {
+            writeStage(stage);
+            commit("Merged " + branchNameArg + " into " + currBranch + ".",
+                    given);
+        }
+    }
+
+    /** Stages the three-way merge of the blob maps SPLIT, CURR and GIVEN
+     * into STAGE and updates the working directory to match, in one
+     * sorted pass over the three maps. Prints a message for conflicts,
+     * which are written out with conflict markers and staged. Returns
+     * false, changing nothing, if an untracked file is in the way. */
+    static boolean mergeFiles(TreeMap<String, String> split,
+                              TreeMap<String, String> curr,
+                              TreeMap<String, String> given, Stage stage) {
+        TreeMap<String, String> toWrite = new TreeMap<>();
+        TreeMap<String, String> toRemove = new TreeMap<>();
+        TreeMap<String, String> conflicts = new TreeMap<>();
+        Iterator<String> splitNames = split.keySet().iterator();
+        Iterator<String> currNames = curr.keySet().iterator();
+        Iterator<String> givenNames = given.keySet().iterator();
+        String s = next(splitNames), c = next(currNames), g = next(givenNames);
+        while (s != null || c != null || g != null) {
+            String fileName = min(s, min(c, g));
+            String splitSHA = fileName.equals(s) ? split.get(s) : null;
+            String currSHA = fileName.equals(c) ? curr.get(c) : null;
+            String givenSHA = fileName.equals(g) ? given.get(g) : null;
+            if (!Objects.equals(currSHA, givenSHA)
+                    && !Objects.equals(splitSHA, givenSHA)) {
+                if (Objects.equals(splitSHA, currSHA)) {
+                    if (givenSHA == null) {
+                        toRemove.put(fileName, currSHA);
+                    } else {
+                        toWrite.put(fileName, givenSHA);
+                    }
+                } else {
+                    conflicts.put(fileName,
+                            conflictContents(currSHA, givenSHA));
                 }
             }
+            if (currSHA == null && givenSHA != null
+                    && Utils.join(CURRENT_PATH, fileName).isFile()
+                    && (toWrite.containsKey(fileName)
+                        || conflicts.containsKey(fileName))) {
+                System.out.println(TreeUpdate.UNTRACKED_IN_THE_WAY);
+                return false;
+            }
+            s = fileName.equals(s) ? next(splitNames) : s;
+            c = fileName.equals(c) ? next(currNames) : c;
+            g = fileName.equals(g) ? next(givenNames) : g;
+        }
 
-            List<String> fileNames = new ArrayList<>();
-            for (Object fileName: currCommit.getBlobs().keySet()) {
-                fileNames.add(fileName.toString());
+        for (String fileName : toRemove.keySet()) {
+            stage.addToRemoveStage(fileName, toRemove.get(fileName));
+            Utils.restrictedDelete(Utils.join(CURRENT_PATH, fileName));
+            StatCache.forget(fileName);
+        }
+        Materializer.materialize(toWrite);
+        for (String fileName : toWrite.keySet()) {
+            stage.addToFile(fileName, toWrite.get(fileName));
+        }
+        for (String fileName : conflicts.keySet()) {
+            byte[] contents = conflicts.get(fileName)
+                    .getBytes(StandardCharsets.UTF_8);
+            String blobSHA = Utils.sha1(contents);
+            ObjectStore.writeBlob(blobSHA, contents, curr.get(fileName));
+            writeWorkingFile(fileName, blobSHA);
+            stage.addToFile(fileName, blobSHA);
+        }
+        if (!conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        return true;
+    }
+
+    /** Merges into working file OURS the changes made in THEIRS, taking
+     * BASE as their common ancestor, line by line. Overlapping changes
+     * are left between conflict markers. */
+    public static void mergeFile(String base, String ours, String theirs) {
+        File[] files = {
+            Utils.join(CURRENT_PATH, base), Utils.join(CURRENT_PATH, ours),
+            Utils.join(CURRENT_PATH, theirs)
+        };
+        for (File file : files) {
+            if (!file.isFile()) {
+                System.out.println("File does not exist.");
+                return;
             }
-            for (String fileName : fileNames) {
-                String[] args = new String[]
-                    { "checkout", commitID, "--", fileName };
-                checkout(args);
+        }
+        Diff3 merger = new Diff3();
+        List<String> merged = merger.merge(
+                BlobDelta.splitLines(Utils.readContents(files[0])),
+                BlobDelta.splitLines(Utils.readContents(files[1])),
+                BlobDelta.splitLines(Utils.readContents(files[2])),
+                ours, theirs);
+        Utils.writeContents(files[1], String.join("", merged)
+                .getBytes(StandardCharsets.ISO_8859_1));
+        if (merger.conflicts() > 0) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Returns the contents of a conflicted file whose versions in the
+     * current and given branches are the blobs CURRSHA and GIVENSHA,
+     * either of which may be null for a deleted file. */
+    private static String conflictContents(String currSHA, String givenSHA) {
+        return "<<<<<<< HEAD\n" + blobText(currSHA) + "=======\n"
+                + blobText(givenSHA) + ">>>>>>>\n";
+    }
+
+    /** Returns the contents of blob BLOBSHA as a String, or "" if
+     * BLOBSHA is null. */
+    private static String blobText(String blobSHA) {
+        if (blobSHA == null) {
+            return "";
+        }
+        return new String(ObjectStore.readBlob(blobSHA),
+                StandardCharsets.UTF_8);
+    }
+
+    /** Returns the next name from NAMES, or null if there are none. */
+    private static String next(Iterator<String> names) {
+        return names.hasNext() ? names.next() : null;
+    }
+
+    /** Returns the lesser of A and B, treating null as greatest. */
+    private static String min(String a, String b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /** Prints a unified diff of the changes between the commits named
+     * by COMMITIDS. With two commits, compares the first with the second;
+     * with one, compares it with the working directory; with none,
+     * compares the current commit with the working directory. The
+     * working directory holds the files tracked by the compared commit
+     * or staged for addition, less those staged for removal. */
+    public static void diff(String... commitIDs) {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Commit[] commits = new Commit[commitIDs.length];
+        for (int i = 0; i < commitIDs.length; i += 1) {
+            String commitID = findShortUID(commitIDs[i]);
+            if (commitID == null) {
+                return;
+            }
+            commits[i] = CommitStore.read(commitID);
+            if (commits[i] == null) {
+                System.out.println("No commit with that id exists.");
+                return;
             }
+        }
+        TreeMap<String, String> oldFiles = commits.length == 0
+                ? currCommit().getBlobs() : commits[0].getBlobs();
+        TreeMap<String, String> newFiles;
+        if (commits.length == 2) {
+            newFiles = commits[1].getBlobs();
+        } else {
+            Stage stage = readStage();
+            TreeSet<String> tracked = new TreeSet<>(oldFiles.keySet());
+            tracked.addAll(stage.getAddedFiles().keySet());
+            tracked.removeAll(stage.getRemovedFiles().keySet());
+            newFiles = new TreeMap<>();
+            for (String fileName : tracked) {
+                if (Utils.join(CURRENT_PATH, fileName).isFile()) {
+                    newFiles.put(fileName, TreeDiff.WORKING);
+                }
+            }
+        }
+        TreeDiff.print(oldFiles, newFiles, System.out);
+    }
 
-            stage.clear();
-            writeStage(stage);
+    /** Moves the objects of a repository created before sharding into
+     * their shard directories. */
+    public static void migrateObjects() throws IOException {
+        if (!checkInitialized()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
         }
+        int blobs = ObjectStore.migrate(BLOBPATH);
+        int commits = ObjectStore.migrate(COMMITPATH);
+        System.out.println("Migrated " + blobs + " blobs and "
+                + commits + " commits.");
     }
 
-    public static void merge(String fileName) {
+    /** Prints the value of config setting KEY, or sets it to VALUE
+     * when one is given. */
+    public static void config(String key, String value) {
         if (!checkInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         }
-        return;
+        if (value == null) {
+            System.out.println(Config.get(key, ""));
+        } else {
+            Config.set(key, value);
+        }
     }
 
     public static Commit currCommit() {
-        String currHEAD = readHEAD();
-        for (File f : COMMITPATH.listFiles()) {
-            Commit curr = Utils.readObject(f, Commit.class);
-            if (curr.getMySHA().equals(currHEAD)) {
-                return curr;
-            }
-        }
-        return null;
+        return RepositorySession.current().currCommit();
     }
 
     public static void writeCommit(Commit commit) {
-        Utils.writeObject(Utils.join(COMMIT_PATH,
-                commit.getMySHA() + ".txt"), commit);
+        CommitStore.write(commit);
     }
 
     public static String readHEAD() {
-        if (HEADFILEPATH.exists()) {
-            return Utils.readContentsAsString(HEADFILEPATH);
-        } else {
-            return "";
-        }
+        return RepositorySession.current().head.get();
     }
     public static void writeHEAD(String head) {
-        if (HEADFILEPATH.exists()) {
-            Utils.writeContents(HEADFILEPATH, head);
-        }
+        RepositorySession.current().head.set(head);
+    }
+
+    /** Returns the name of the current branch. */
+    public static String readCurrBranch() {
+        return RepositorySession.current().currBranch.get();
+    }
+    /** Makes BRANCHNAMEARG the current branch. */
+    public static void writeCurrBranch(String branchNameArg) {
+        RepositorySession.current().currBranch.set(branchNameArg);
     }
 
     public static Stage readStage() {
-        if (STAGEPATHFILE.exists()) {
-            return Utils.readObject(STAGEPATHFILE, Stage.class);
-        } else {
-            Stage stage = new Stage();
-            return stage;
-        }
+        return RepositorySession.current().stage.get();
     }
     public static void writeStage(Stage stage) {
-        if (STAGEPATHFILE.exists()) {
-            Utils.writeObject(STAGEPATHFILE, stage);
-        }
+        RepositorySession.current().stage.set(stage);
     }
 
     public static TreeMap<String, String> readBranchMap() {
-        if (BRANCHFILEPATH.exists()) {
-            return Utils.readObject(BRANCHFILEPATH, TreeMap.class);
-        } else {
-            TreeMap<String, String> branchMap = new TreeMap<>();
-            return branchMap;
-        }
+        return RepositorySession.current().branchMap.get();
     }
     public static void writeBranchMap(TreeMap<String, String> branchMap) {
-        if (BRANCHFILEPATH.exists()) {
-            Utils.writeObject(BRANCHFILEPATH, branchMap);
-        }
+        RepositorySession.current().branchMap.set(branchMap);
     }
 
     public static void serializeHSB(String head, Stage stage,
@@ -701,17 +1025,20 @@ public class GitletRepo {
         return GITPATH.exists();
     }
 
+    /** Expands the possibly abbreviated COMMITID to a full SHA using
+     * the sorted commit index. Returns "" if no commit matches, and
+     * prints a message and returns null if more than one does. */
     public static String findShortUID(String commitID) {
-        String longCommitID = "";
-        String shortCommitID = "";
-        for (File f: COMMITPATH.listFiles()) {
-            Commit curr = Utils.readObject(f, Commit.class);
-            shortCommitID = curr.getMySHA().substring(0, 8);
-            if (shortCommitID.equals(commitID)) {
-                longCommitID = curr.getMySHA();
-                break;
-            }
+        if (commitID.length() == Utils.UID_LENGTH) {
+            return commitID;
+        }
+        List<String> matches = CommitStore.findByPrefix(commitID, 2);
+        if (matches.isEmpty()) {
+            return "";
+        } else if (matches.size() > 1) {
+            System.out.println("Ambiguous commit id.");
+            return null;
         }
-        return longCommitID;
+        return matches.get(0);
     }
 }
@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/** Assigns each distinct line a small int ID, so sequences of lines
+ * can be compared as int arrays. Lines equal as Strings get the same
+ * ID; sharing one interner between several comparisons makes their
+ * IDs comparable too.
+ * @author Megan Mehta
+ */
+
+public class LineInterner {
+    /** IDs of the lines seen so far. */
+    private final HashMap<String, Integer> ids = new HashMap<>();
+
+    /** Lines seen so far, indexed by ID. */
+    private final ArrayList<String> lines = new ArrayList<>();
+
+    /** Returns the ID of LINE, assigning a new one if needed. */
+    public int intern(String line) {
+        Integer id = ids.get(line);
+        if (id == null) {
+            id = lines.size();
+            ids.put(line, id);
+            lines.add(line);
+        }
+        return id;
+    }
+
+    /** Returns the IDs of the lines in SEQ, in order. */
+    public int[] intern(Collection<String> seq) {
+        int[] result = new int[seq.size()];
+        int i = 0;
+        for (String line : seq) {
+            result[i] = intern(line);
+            i += 1;
+        }
+        return result;
+    }
+
+    /** Returns the line with ID. */
+    public String line(int id) {
+        return lines.get(id);
+    }
+
+    /** Returns the number of distinct lines seen. */
+    public int size() {
+        return lines.size();
+    }
+}
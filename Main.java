@@ -2,6 +2,7 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, the tiny stupid little
  * version-control system for my stupid little 61B grade
@@ -12,6 +13,32 @@ import java.io.IOException;
  */
 public class Main {
     public static void main(String... args) throws IOException {
+        run(args);
+        System.exit(0);
+    }
+
+    /** Runs the command ARGS as main does, without exiting, so that
+     * one process can run many commands. */
+    static void run(String... args) throws IOException {
+        dispatch(args);
+        StatCache.save();
+    }
+
+    /** Runs the command ARGS in a repository session of its own,
+     * writing back the state it changed and leaving the stat cache
+     * unsaved. */
+    static void dispatch(String... args) throws IOException {
+        RepositorySession session = RepositorySession.open();
+        try {
+            execute(args);
+            session.flush();
+        } finally {
+            RepositorySession.close();
+        }
+    }
+
+    /** Runs the command ARGS. */
+    private static void execute(String... args) throws IOException {
         if (args.length <= 0) {
             System.out.println("Please enter a command.");
         } else {
@@ -24,8 +51,8 @@ public class Main {
                 break;
             }
             case "add": {
-                if (validArgs(2, args)) {
-                    GitletRepo.add(args[1]);
+                if (args.length >= 2) {
+                    GitletRepo.add(Arrays.copyOfRange(args, 1, args.length));
                 }
                 break;
             }
@@ -48,14 +75,15 @@ public class Main {
                 break;
             }
             case "global-log": {
-                if (validArgs(1, args)) {
-                    GitletRepo.globalLog();
-                }
+                GitletRepo.globalLog(Arrays.copyOfRange(args, 1, args.length));
                 break;
             }
             case "find": {
                 if (validArgs(2, args)) {
                     GitletRepo.find(args[1]);
+                } else if (args.length >= 3 && args[1].equals("-w")) {
+                    GitletRepo.findWords(
+                            Arrays.copyOfRange(args, 2, args.length));
                 }
                 break;
             }
@@ -69,7 +97,6 @@ public class Main {
                 main2(args);
             }
         }
-        System.exit(0);
     }
 
     public static void main2(String[] args) throws IOException {
@@ -105,6 +132,58 @@ public class Main {
             }
             break;
         }
+        case "diff": {
+            if (args.length <= 3) {
+                GitletRepo.diff(Arrays.copyOfRange(args, 1, args.length));
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        }
+        case "batch": {
+            if (validArgs(1, args)) {
+                Batch.run(null);
+            } else if (validArgs(2, args)) {
+                Batch.run(args[1]);
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        }
+        case "daemon": {
+            if (validArgs(1, args)) {
+                Daemon.serve();
+            } else if (validArgs(2, args) && args[1].equals("stop")) {
+                Daemon.stop();
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        }
+        case "migrate-objects": {
+            if (validArgs(1, args)) {
+                GitletRepo.migrateObjects();
+            }
+            break;
+        }
+        case "merge-file": {
+            if (validArgs(4, args)) {
+                GitletRepo.mergeFile(args[1], args[2], args[3]);
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        }
+        case "config": {
+            if (validArgs(2, args)) {
+                GitletRepo.config(args[1], null);
+            } else if (validArgs(3, args)) {
+                GitletRepo.config(args[1], args[2]);
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        }
         default:
             System.out.println("No command with that name exists.");
         }
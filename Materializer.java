@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** Writes many blobs into the working directory at once, as for a
+ * branch checkout or reset. Work flows through three stages, each
+ * run by its own group of threads and joined to the next by a bounded
+ * queue: reading stored object bytes, decompressing (or rebuilding
+ * deltas), and writing working files. Slow disks and slow inflation
+ * overlap instead of alternating. Files are written byte for byte as
+ * stored; if any fail, the failure of the first failing file in name
+ * order is reported, whatever order the threads ran in.
+ * @author Megan Mehta
+ */
+
+public class Materializer {
+    /** Number of items each queue can hold per worker. */
+    static final int QUEUE_DEPTH = 4;
+
+    /** One file moving through the pipeline. */
+    private static class Item {
+        /** Working file name. */
+        private final String fileName;
+        /** SHA of the blob to write to it. */
+        private final String blobSHA;
+        /** Object file bytes, then blob contents. */
+        private byte[] data;
+
+        Item(String myFileName, String myBlobSHA) {
+            this.fileName = myFileName;
+            this.blobSHA = myBlobSHA;
+        }
+    }
+
+    /** Marks the end of a queue. */
+    private static final Item DONE = new Item(null, null);
+
+    /** Failures by file name, so the first one reported does not depend
+     * on thread scheduling. */
+    private final TreeMap<String, String> failures = new TreeMap<>();
+
+    /** Number of threads in each stage. */
+    private final int workers;
+
+    private Materializer(int myWorkers) {
+        this.workers = myWorkers;
+    }
+
+    /** Writes each blob in FILES, a map of working file name to blob
+     * SHA, into the working directory and records it in the stat
+     * cache. Files that already hold their blob are left alone. */
+    static void materialize(Map<String, String> files) {
+        TreeMap<String, String> toWrite = new TreeMap<>();
+        for (String fileName : files.keySet()) {
+            File file = Utils.join(GitletRepo.CURRENT_PATH, fileName);
+            if (ObjectStore.sameContents(file, files.get(fileName))) {
+                StatCache.record(file, files.get(fileName));
+            } else {
+                toWrite.put(fileName, files.get(fileName));
+            }
+        }
+        if (toWrite.isEmpty()) {
+            return;
+        }
+        int workers = Math.max(1, Config.getInt("checkoutThreads",
+                Runtime.getRuntime().availableProcessors()));
+        new Materializer(Math.min(workers, toWrite.size())).run(toWrite);
+        for (String fileName : toWrite.keySet()) {
+            File file = Utils.join(GitletRepo.CURRENT_PATH, fileName);
+            if (file.isFile()) {
+                StatCache.record(file, toWrite.get(fileName));
+            }
+        }
+    }
+
+    /** Runs the pipeline over TOWRITE and throws the first failure. */
+    private void run(TreeMap<String, String> toWrite) {
+        BlockingQueue<Item> pending = new ArrayBlockingQueue<>(
+                toWrite.size() + workers);
+        BlockingQueue<Item> read = new ArrayBlockingQueue<>(
+                QUEUE_DEPTH * workers);
+        BlockingQueue<Item> decoded = new ArrayBlockingQueue<>(
+                QUEUE_DEPTH * workers);
+        for (String fileName : toWrite.keySet()) {
+            pending.add(new Item(fileName, toWrite.get(fileName)));
+        }
+        for (int i = 0; i < workers; i += 1) {
+            pending.add(DONE);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i += 1) {
+            threads.add(stage(pending, read, item ->
+                    item.data = ObjectStore.readStoredBlob(item.blobSHA)));
+            threads.add(stage(read, decoded, item ->
+                    item.data = ObjectStore.decodeBlob(item.blobSHA,
+                            item.data)));
+            threads.add(stage(decoded, null, item ->
+                    Utils.writeContents(Utils.join(GitletRepo.CURRENT_PATH,
+                            item.fileName), item.data)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException("checkout interrupted");
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalArgumentException(failures.firstKey() + ": "
+                    + failures.firstEntry().getValue());
+        }
+    }
+
+    /** Work done on one item by one stage. */
+    private interface Step {
+        /** Applies this step to ITEM. */
+        void apply(Item item);
+    }
+
+    /** Returns a thread that takes items from IN, applies STEP and
+     * passes them to OUT (if not null), until it takes DONE, which it
+     * passes on. Items whose step fails are recorded and dropped. */
+    private Thread stage(BlockingQueue<Item> in, BlockingQueue<Item> out,
+                         Step step) {
+        return new Thread(() -> {
+            try {
+                while (true) {
+                    Item item = in.take();
+                    if (item == DONE) {
+                        if (out != null) {
+                            out.put(DONE);
+                        }
+                        return;
+                    }
+                    try {
+                        step.apply(item);
+                    } catch (RuntimeException excp) {
+                        synchronized (failures) {
+                            failures.put(item.fileName,
+                                    String.valueOf(excp.getMessage()));
+                        }
+                        continue;
+                    }
+                    if (out != null) {
+                        out.put(item);
+                    }
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+}
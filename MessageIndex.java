@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/** A persistent index from commit messages to the commits that have
+ * them, so find never deserializes commits. Each commit adds one
+ * posting for the hash of its whole message and one for each distinct
+ * word in it. Postings are appended, as lines of key and commit SHA, to
+ * one of 256 bucket files chosen by the hash of the key, so a lookup
+ * reads a single small bucket. Postings stay in the order commits were
+ * written.
+ * @author Megan Mehta
+ */
+
+public class MessageIndex {
+    /** Message index directory path as a String. */
+    static final String MESSAGE_INDEX_PATH = ".gitlet/index/messages/";
+    /** Message index directory path File object. */
+    static final File MESSAGEINDEXPATH = new File(MESSAGE_INDEX_PATH);
+
+    /** Prefix of the key for a whole message. */
+    private static final String MESSAGE_KEY = "m";
+    /** Prefix of the key for a word. */
+    private static final String WORD_KEY = "w";
+
+    /** Returns the SHAs of the commits whose message is exactly MSG. */
+    static List<String> findMessage(String msg) {
+        return lookup(MESSAGE_KEY + Utils.sha1(msg));
+    }
+
+    /** Returns the SHAs of the commits whose messages contain every one
+     * of WORDS, compared without regard to case. */
+    static List<String> findWords(String... words) {
+        LinkedHashSet<String> result = null;
+        for (String word : words) {
+            for (String token : tokens(word)) {
+                List<String> postings = lookup(WORD_KEY + token);
+                if (result == null) {
+                    result = new LinkedHashSet<>(postings);
+                } else {
+                    result.retainAll(postings);
+                }
+            }
+        }
+        return result == null ? new ArrayList<>() : new ArrayList<>(result);
+    }
+
+    /** Adds the postings for COMMIT, rebuilding the whole index instead
+     * if it does not exist yet. */
+    static void add(Commit commit) {
+        if (!MESSAGEINDEXPATH.isDirectory()) {
+            rebuild();
+            return;
+        }
+        TreeMap<String, StringBuilder> buckets = new TreeMap<>();
+        post(commit, buckets);
+        for (String bucket : buckets.keySet()) {
+            try {
+                Files.write(Utils.join(MESSAGEINDEXPATH, bucket).toPath(),
+                        buckets.get(bucket).toString()
+                                .getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Recreates the index from every commit, for repositories made
+     * before it existed. */
+    static void rebuild() {
+        TreeMap<String, StringBuilder> buckets = new TreeMap<>();
+        for (String commitID : CommitStore.allIDs()) {
+            post(CommitStore.read(commitID), buckets);
+        }
+        File temp = Utils.join(CommitStore.INDEXPATH, "messages.tmp");
+        temp.mkdirs();
+        for (String bucket : buckets.keySet()) {
+            Utils.writeContents(Utils.join(temp, bucket),
+                    buckets.get(bucket).toString());
+        }
+        if (!temp.renameTo(MESSAGEINDEXPATH)) {
+            throw new IllegalArgumentException("could not create "
+                    + MESSAGE_INDEX_PATH);
+        }
+    }
+
+    /** Returns the lower-cased words of TEXT, without repeats. */
+    static LinkedHashSet<String> tokens(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT)
+                .split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Adds the postings for COMMIT to BUCKETS, a map of bucket file name
+     * to the lines to add to it. */
+    private static void post(Commit commit, TreeMap<String, StringBuilder>
+                             buckets) {
+        List<String> keys = new ArrayList<>();
+        keys.add(MESSAGE_KEY + Utils.sha1(commit.getMsg()));
+        for (String token : tokens(commit.getMsg())) {
+            keys.add(WORD_KEY + token);
+        }
+        for (String key : keys) {
+            buckets.computeIfAbsent(bucket(key), b -> new StringBuilder())
+                .append(key).append('\t').append(commit.getMySHA())
+                .append('\n');
+        }
+    }
+
+    /** Returns the commit SHAs posted under KEY, in the order they were
+     * added. */
+    private static List<String> lookup(String key) {
+        if (!MESSAGEINDEXPATH.isDirectory()) {
+            rebuild();
+        }
+        List<String> result = new ArrayList<>();
+        File bucket = Utils.join(MESSAGEINDEXPATH, bucket(key));
+        if (!bucket.isFile()) {
+            return result;
+        }
+        String prefix = key + "\t";
+        for (String line : Utils.readContentsAsString(bucket).split("\n")) {
+            if (line.startsWith(prefix)) {
+                result.add(line.substring(prefix.length()));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the name of the bucket file holding the postings for
+     * KEY. */
+    private static String bucket(String key) {
+        return Utils.sha1(key).substring(0, 2);
+    }
+}
@@ -0,0 +1,370 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/** Locates blob and commit objects on disk. Objects are sharded
+ * into subdirectories named after the first two hex digits of
+ * their SHA (.gitlet/blobs/ab/cdef....txt) so no single directory
+ * grows with the size of the repository. Objects written before
+ * sharding, directly inside the object directory, are still found
+ * until the repository is migrated. Object files are Deflate
+ * compressed at the level given by the "compression" config
+ * setting; uncompressed objects from older versions read as before.
+ * When the "delta" setting is true, a new blob may instead be stored
+ * as a BlobDelta against the previous version of the same file, in a
+ * .delta file beside where the full blob would go.
+ * @author Megan Mehta
+ */
+
+public class ObjectStore {
+    /** Number of leading SHA characters used as the shard name. */
+    static final int FANOUT_LENGTH = 2;
+
+    /** Suffix given to every object file. */
+    static final String SUFFIX = ".txt";
+
+    /** Suffix given to blobs stored as deltas. */
+    static final String DELTA_SUFFIX = ".delta";
+
+    /** Default longest chain of deltas behind any blob. */
+    static final int DEFAULT_DELTA_DEPTH = 10;
+
+    /** Default size in bytes of the largest file stored as a delta. */
+    static final int DEFAULT_DELTA_MAX_SIZE = 16 << 20;
+
+    /** Default number of bytes of rebuilt blobs kept in memory. */
+    static final int DEFAULT_DELTA_CACHE = 64 << 20;
+
+    /** Blobs read while rebuilding deltas, most recently used last, so a
+     * checkout touching many versions of one chain rebuilds each base
+     * once. */
+    private static final LinkedHashMap<String, byte[]> BASE_CACHE =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total bytes held by BASE_CACHE. */
+    private static long baseCacheBytes;
+
+    /** Returns the Deflate level objects are written at, from 0 (no
+     * compression) to 9, or -1 for the Deflater default. */
+    static int compressionLevel() {
+        int level = Config.getInt("compression", Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        return level;
+    }
+
+    /** Returns the sharded file for object SHA under ROOT. */
+    static File shardedFile(File root, String sha) {
+        return Utils.join(root, sha.substring(0, FANOUT_LENGTH),
+                sha.substring(FANOUT_LENGTH) + SUFFIX);
+    }
+
+    /** Returns the unsharded file for object SHA under ROOT, as
+     * written by older versions of gitlet. */
+    static File legacyFile(File root, String sha) {
+        return Utils.join(root, sha + SUFFIX);
+    }
+
+    /** Returns the file holding object SHA under ROOT. If the object
+     * does not exist yet, returns the sharded location it should be
+     * written to. */
+    static File locate(File root, String sha) {
+        File sharded = shardedFile(root, sha);
+        if (!sharded.isFile()) {
+            File legacy = legacyFile(root, sha);
+            if (legacy.isFile()) {
+                return legacy;
+            }
+        }
+        return sharded;
+    }
+
+    /** Returns true if object SHA exists under ROOT. */
+    static boolean exists(File root, String sha) {
+        return locate(root, sha).isFile();
+    }
+
+    /** Returns the file that object SHA under ROOT should be written to,
+     * creating its shard directory if needed. */
+    static File fileForWrite(File root, String sha) {
+        File file = shardedFile(root, sha);
+        if (file.getParentFile().mkdirs()) {
+            Durability.created(file.getParentFile());
+        }
+        return file;
+    }
+
+    /** Returns the SHAs of every object under ROOT, sharded or not. */
+    static List<String> allIDs(File root) {
+        List<String> ids = new ArrayList<>();
+        File[] entries = root.listFiles();
+        if (entries == null) {
+            return ids;
+        }
+        for (File entry : entries) {
+            String name = entry.getName();
+            if (entry.isDirectory() && name.length() == FANOUT_LENGTH) {
+                for (String fileName : Utils.plainFilenamesIn(entry)) {
+                    if (fileName.endsWith(SUFFIX)) {
+                        ids.add(name + stripSuffix(fileName));
+                    }
+                }
+            } else if (entry.isFile() && isObjectName(name)) {
+                ids.add(stripSuffix(name));
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the blob file for BLOBSHA. */
+    static File blobFile(String blobSHA) {
+        return locate(GitletRepo.BLOBPATH, blobSHA);
+    }
+
+    /** Returns the delta file for BLOBSHA. */
+    static File deltaFile(String blobSHA) {
+        return Utils.join(GitletRepo.BLOBPATH,
+                blobSHA.substring(0, FANOUT_LENGTH),
+                blobSHA.substring(FANOUT_LENGTH) + DELTA_SUFFIX);
+    }
+
+    /** Returns true if blob BLOBSHA is stored, whole or as a delta. */
+    static boolean blobExists(String blobSHA) {
+        return exists(GitletRepo.BLOBPATH, blobSHA)
+                || deltaFile(blobSHA).isFile();
+    }
+
+    /** Returns the contents of blob BLOBSHA. */
+    static byte[] readBlob(String blobSHA) {
+        byte[] cached;
+        synchronized (BASE_CACHE) {
+            cached = BASE_CACHE.get(blobSHA);
+        }
+        if (cached != null) {
+            return cached;
+        }
+        File full = blobFile(blobSHA);
+        if (full.isFile()) {
+            return Utils.readCompressed(full);
+        }
+        BlobDelta delta = BlobDelta.read(deltaFile(blobSHA));
+        byte[] base = readBlob(delta.getBaseSHA());
+        cacheBase(delta.getBaseSHA(), base);
+        byte[] contents = delta.apply(base);
+        cacheBase(blobSHA, contents);
+        return contents;
+    }
+
+    /** Returns true if working file FILE holds exactly blob BLOBSHA.
+     * A fresh stat cache entry answers without reading anything. An
+     * uncompressed blob is compared with FILE by memory-mapping both,
+     * which stops at the first difference and skips files of different
+     * sizes outright. A compressed blob is inflated as a stream and
+     * compared with FILE, mapped, as it goes, so it too stops at the
+     * first difference. A match is recorded in the stat cache. Delta
+     * blobs cannot be compared without rebuilding them, so FILE is
+     * hashed instead. */
+    static boolean sameContents(File file, String blobSHA) {
+        if (!file.isFile()) {
+            return false;
+        }
+        String cached = StatCache.cachedHash(file);
+        if (cached != null) {
+            return cached.equals(blobSHA);
+        }
+        File blob = blobFile(blobSHA);
+        if (!blob.isFile()) {
+            return StatCache.hash(file).equals(blobSHA);
+        }
+        boolean same;
+        if (Utils.isCompressed(blob)) {
+            try (InputStream in = Utils.openCompressed(blob)) {
+                same = Utils.sameContents(file, in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        } else {
+            same = Utils.sameContents(file, blob);
+        }
+        if (same) {
+            StatCache.record(file, blobSHA);
+        }
+        return same;
+    }
+
+    /** Returns the bytes of the file holding blob BLOBSHA as stored,
+     * still compressed, or null if the blob is stored as a delta. */
+    static byte[] readStoredBlob(String blobSHA) {
+        File full = blobFile(blobSHA);
+        if (!full.isFile() && deltaFile(blobSHA).isFile()) {
+            return null;
+        }
+        return Utils.readContents(full);
+    }
+
+    /** Returns the contents of blob BLOBSHA given STORED, the result of
+     * readStoredBlob(BLOBSHA). */
+    static byte[] decodeBlob(String blobSHA, byte[] stored) {
+        if (stored == null) {
+            return readBlob(blobSHA);
+        }
+        return Utils.decompress(stored);
+    }
+
+    /** Stores CONTENTS as blob BLOBSHA, unless it is already stored. */
+    static void writeBlob(String blobSHA, byte[] contents) {
+        writeBlob(blobSHA, contents, null);
+    }
+
+    /** Stores CONTENTS as blob BLOBSHA, unless it is already stored.
+     * BASESHA, if not null, is the previous version of the same file;
+     * when deltas are enabled and the chain behind BASESHA is short
+     * enough, the blob is stored as a delta against it. */
+    static void writeBlob(String blobSHA, byte[] contents, String baseSHA) {
+        if (blobExists(blobSHA)) {
+            return;
+        }
+        if (baseSHA != null && !baseSHA.equals(blobSHA)
+                && Boolean.parseBoolean(Config.get("delta", "false"))
+                && blobExists(baseSHA)) {
+            int depth = deltaDepth(baseSHA) + 1;
+            if (depth <= Config.getInt("deltaDepth", DEFAULT_DELTA_DEPTH)) {
+                BlobDelta delta = BlobDelta.create(baseSHA, depth,
+                        readBlob(baseSHA), contents);
+                if (delta != null) {
+                    fileForWrite(GitletRepo.BLOBPATH, blobSHA);
+                    File temp = Durability.tempFor(deltaFile(blobSHA));
+                    delta.write(temp, compressionLevel());
+                    Durability.publish(temp, deltaFile(blobSHA));
+                    return;
+                }
+            }
+        }
+        File target = fileForWrite(GitletRepo.BLOBPATH, blobSHA);
+        File temp = Durability.tempFor(target);
+        Utils.writeCompressed(temp, compressionLevel(), contents);
+        Durability.publish(temp, target);
+    }
+
+    /** Stores the contents of SOURCE as a blob and returns its SHA.
+     * The file is read once, hashed as it is streamed into a temporary
+     * object file, and the temporary file is then renamed to the blob's
+     * name, so memory use does not depend on the file's size. Nothing is
+     * kept if the blob is already stored. BASESHA is as for writeBlob;
+     * files too large for BlobDelta are always stored whole. */
+    static String writeBlob(File source, String baseSHA) {
+        File temp = Utils.join(GitletRepo.BLOBPATH,
+                "tmp-" + ProcessHandle.current().pid() + "-"
+                + Thread.currentThread().getId());
+        String blobSHA;
+        try (DigestInputStream in = new DigestInputStream(
+                new FileInputStream(source), Utils.sha1Digest());
+             OutputStream out = Utils.openCompressedOutput(temp,
+                     compressionLevel())) {
+            in.transferTo(out);
+            blobSHA = Utils.toHex(in.getMessageDigest().digest());
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            if (blobExists(blobSHA)) {
+                return blobSHA;
+            }
+            if (baseSHA != null
+                    && source.length() <= Config.getInt("deltaMaxSize",
+                            DEFAULT_DELTA_MAX_SIZE)
+                    && Boolean.parseBoolean(Config.get("delta", "false"))) {
+                writeBlob(blobSHA, Utils.readCompressed(temp), baseSHA);
+                return blobSHA;
+            }
+            Durability.publish(temp,
+                    fileForWrite(GitletRepo.BLOBPATH, blobSHA));
+            return blobSHA;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /** Returns the number of deltas that must be applied to rebuild
+     * blob BLOBSHA; 0 if it is stored whole. */
+    static int deltaDepth(String blobSHA) {
+        if (exists(GitletRepo.BLOBPATH, blobSHA)) {
+            return 0;
+        }
+        return BlobDelta.readDepth(deltaFile(blobSHA));
+    }
+
+    /** Remembers CONTENTS as the contents of blob BLOBSHA, evicting the
+     * least recently used entries once the cache is over budget. */
+    private static void cacheBase(String blobSHA, byte[] contents) {
+        long limit = Config.getInt("deltaCache", DEFAULT_DELTA_CACHE);
+        synchronized (BASE_CACHE) {
+            if (contents.length > limit || BASE_CACHE.containsKey(blobSHA)) {
+                return;
+            }
+            BASE_CACHE.put(blobSHA, contents);
+            baseCacheBytes += contents.length;
+            while (baseCacheBytes > limit) {
+                Map.Entry<String, byte[]> eldest =
+                        BASE_CACHE.entrySet().iterator().next();
+                baseCacheBytes -= eldest.getValue().length;
+                BASE_CACHE.remove(eldest.getKey());
+            }
+        }
+    }
+
+    /** Writes the encoded COMMIT to FILE, compressed. */
+    static void writeCommit(File file, Commit commit) {
+        File temp = Durability.tempFor(file);
+        Utils.writeCompressed(temp, compressionLevel(),
+                Codec.encode(commit));
+        Durability.publish(temp, file);
+    }
+
+    /** Moves every unsharded object under ROOT into its shard
+     * directory. Returns the number of objects moved. */
+    static int migrate(File root) throws IOException {
+        int moved = 0;
+        List<String> names = Utils.plainFilenamesIn(root);
+        if (names == null) {
+            return moved;
+        }
+        for (String name : names) {
+            if (!isObjectName(name)) {
+                continue;
+            }
+            String sha = stripSuffix(name);
+            Files.move(legacyFile(root, sha).toPath(),
+                    fileForWrite(root, sha).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            moved += 1;
+        }
+        return moved;
+    }
+
+    /** Returns true if NAME looks like an unsharded object file name. */
+    private static boolean isObjectName(String name) {
+        return name.length() == Utils.UID_LENGTH + SUFFIX.length()
+                && name.endsWith(SUFFIX);
+    }
+
+    /** Returns NAME without the object file suffix. */
+    private static String stripSuffix(String name) {
+        return name.substring(0, name.length() - SUFFIX.length());
+    }
+}
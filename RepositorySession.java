@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** The repository state one command works on: HEAD, the current
+ * branch, the stage, the branch map and the current commit. Each is
+ * read from disk the first time it is asked for and then shared by
+ * every helper the command calls. Updates are held in the session
+ * and written back when the command finishes, and then only for the
+ * files whose encoding actually changed. Sessions nest: a session
+ * opened inside another reads its state from the outer one and hands
+ * its updates back to it when flushed, so a batch runs each of its
+ * commands in a session of its own and writes to disk only when it
+ * flushes its own session, at a checkpoint. A process serving many
+ * commands can have the state one command leaves kept for the next,
+ * to be reused for each file that no one has changed in between.
+ * @author Megan Mehta
+ */
+
+public class RepositorySession {
+    /** The open session, or null. */
+    private static RepositorySession current;
+
+    /** True if the state each command leaves is kept for the next. */
+    private static boolean retaining;
+
+    /** The session of the last command, kept while retaining, or
+     * null. */
+    private static RepositorySession retained;
+
+    /** The session that was open when this one was opened, or null. */
+    private final RepositorySession outer;
+
+    /** True if updates are written out as soon as they are made, for a
+     * session used outside any command. */
+    private final boolean writeThrough;
+
+    /** SHA of the current commit. */
+    final Slot<String> head = new Slot<>(GitletRepo.HEADFILEPATH, true,
+            s -> s.head, RepositorySession::decodeString,
+            RepositorySession::encodeString, () -> "");
+
+    /** Name of the current branch. */
+    final Slot<String> currBranch = new Slot<>(
+            GitletRepo.CURRBRANCHFILEPATH, false, s -> s.currBranch,
+            RepositorySession::decodeString,
+            RepositorySession::encodeString, () -> "");
+
+    /** The stage. */
+    final Slot<Stage> stage = new Slot<>(GitletRepo.STAGEPATHFILE, true,
+            s -> s.stage, Codec::decodeStage, Codec::encode, Stage::new);
+
+    /** Head commit SHA of each branch, by branch name. */
+    final Slot<TreeMap<String, String>> branchMap = new Slot<>(
+            GitletRepo.BRANCHFILEPATH, true, s -> s.branchMap,
+            Codec::decodeRefs, Codec::encodeRefs, TreeMap::new);
+
+    /** The current commit, or null if not loaded yet. */
+    private Commit currCommit;
+
+    private RepositorySession(RepositorySession myOuter,
+                              boolean myWriteThrough) {
+        this.outer = myOuter;
+        this.writeThrough = myWriteThrough;
+    }
+
+    /** Opens a new session for a command, inside the open one if
+     * there is one, and returns it. */
+    static RepositorySession open() {
+        current = new RepositorySession(current, false);
+        if (current.outer == null && retained != null) {
+            current.head.adopt(retained.head);
+            current.currBranch.adopt(retained.currBranch);
+            current.stage.adopt(retained.stage);
+            current.branchMap.adopt(retained.branchMap);
+        }
+        return current;
+    }
+
+    /** Closes the open session, dropping anything not yet flushed, and
+     * returns to the one that was open before it. */
+    static void close() {
+        if (current != null) {
+            if (current.outer == null && retaining) {
+                retained = current;
+            }
+            current = current.outer;
+        }
+    }
+
+    /** Closes every open session, dropping anything not yet flushed, so
+     * that the next session opened is an outermost one. */
+    static void closeAll() {
+        current = null;
+    }
+
+    /** Returns the open session, or a session that writes every update
+     * straight away if none is open. */
+    static RepositorySession current() {
+        return current != null ? current : new RepositorySession(null, true);
+    }
+
+    /** Keeps the state each command leaves for the next command. */
+    static void retain() {
+        retaining = true;
+    }
+
+    /** Marks the state the last command left as reusable, once it is
+     * all written out. Only values that still encode to what is in
+     * their files are kept, so a command that changed a value without
+     * saving it cannot pass the change on. */
+    static void settle() {
+        if (retained != null) {
+            retained.head.settle();
+            retained.currBranch.settle();
+            retained.stage.settle();
+            retained.branchMap.settle();
+        }
+    }
+
+    /** Drops the state the last command left, as after a failure. */
+    static void forget() {
+        retained = null;
+    }
+
+    /** Returns the current commit, reading it only if HEAD has moved
+     * since it was last read. */
+    Commit currCommit() {
+        String sha = head.get();
+        if (currCommit == null || !currCommit.getMySHA().equals(sha)) {
+            currCommit = CommitStore.read(sha);
+        }
+        return currCommit;
+    }
+
+    /** Hands every update to the outer session, or if there is none,
+     * writes out every updated file whose encoding has changed. */
+    void flush() {
+        if (outer != null) {
+            stage.handBack();
+            branchMap.handBack();
+            currBranch.handBack();
+            head.handBack();
+            return;
+        }
+        LinkedHashMap<File, byte[]> changed = new LinkedHashMap<>();
+        stage.collect(changed);
+        branchMap.collect(changed);
+        currBranch.collect(changed);
+        head.collect(changed);
+        if (!changed.isEmpty()) {
+            Durability.replaceAll(changed);
+        }
+    }
+
+    /** Drops every value and update held, so that the state is read
+     * again from the outer session or from disk. */
+    void revert() {
+        head.revert();
+        currBranch.revert();
+        stage.revert();
+        branchMap.revert();
+        currCommit = null;
+    }
+
+    /** Returns BYTES as a String. */
+    private static String decodeString(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the bytes of S. */
+    private static byte[] encodeString(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** One state file and the value it holds in this session. */
+    final class Slot<T> {
+        /** The file. */
+        private final File file;
+        /** True if the file is only written when it already exists, as
+         * made by init. */
+        private final boolean mustExist;
+        /** Returns the slot of a session for the same file. */
+        private final Function<RepositorySession, Slot<T>> sameIn;
+        /** Reads a value from the file's contents. */
+        private final Function<byte[], T> decoder;
+        /** Turns a value into the file's contents. */
+        private final Function<T, byte[]> encoder;
+        /** Supplies the value of a missing file. */
+        private final Supplier<T> empty;
+
+        /** The value, once loaded or set. */
+        private T value;
+        /** The file's contents as last read or written, or null. */
+        private byte[] stored;
+        /** True once value holds something. */
+        private boolean loaded;
+        /** True if value was set since the file was last written. */
+        private boolean dirty;
+        /** Metadata of the file when value was last known to match it,
+         * or null. */
+        private Object stamp;
+
+        Slot(File myFile, boolean myMustExist,
+             Function<RepositorySession, Slot<T>> mySameIn,
+             Function<byte[], T> myDecoder, Function<T, byte[]> myEncoder,
+             Supplier<T> myEmpty) {
+            this.file = myFile;
+            this.mustExist = myMustExist;
+            this.sameIn = mySameIn;
+            this.decoder = myDecoder;
+            this.encoder = myEncoder;
+            this.empty = myEmpty;
+        }
+
+        /** Returns the value, taking it from the outer session or
+         * reading the file on first use. */
+        T get() {
+            if (!loaded) {
+                if (outer != null) {
+                    value = sameIn.apply(outer).get();
+                } else if (file.exists()) {
+                    stored = Utils.readContents(file);
+                    value = decoder.apply(stored);
+                } else {
+                    value = empty.get();
+                }
+                loaded = true;
+            }
+            return value;
+        }
+
+        /** Replaces the value with NEWVALUE, to be written out when the
+         * session is flushed. */
+        void set(T newValue) {
+            value = newValue;
+            loaded = true;
+            dirty = true;
+            if (writeThrough) {
+                flush();
+            }
+        }
+
+        /** Sets the value in the outer session if it was set here. */
+        void handBack() {
+            if (dirty) {
+                sameIn.apply(outer).set(value);
+                dirty = false;
+            }
+        }
+
+        /** Forgets the value and any update to it. */
+        void revert() {
+            value = null;
+            stored = null;
+            loaded = false;
+            dirty = false;
+        }
+
+        /** Takes over the value OLD held at the end of the last
+         * command, if the file has not changed since. */
+        void adopt(Slot<T> old) {
+            if (old.stamp != null && old.stamp.equals(Daemon.stamp(file))) {
+                value = old.value;
+                stored = old.stored;
+                loaded = true;
+            }
+        }
+
+        /** Records the metadata of the file if the value is unchanged
+         * from its contents. */
+        void settle() {
+            stamp = null;
+            if (loaded && !dirty && stored != null
+                    && Arrays.equals(encoder.apply(value), stored)) {
+                stamp = Daemon.stamp(file);
+            }
+        }
+
+        /** Adds the file and its new contents to CHANGED if the value was
+         * set to something that encodes differently from the file. */
+        void collect(LinkedHashMap<File, byte[]> changed) {
+            if (!dirty || mustExist && !file.exists()) {
+                return;
+            }
+            byte[] contents = encoder.apply(value);
+            if (!Arrays.equals(contents, stored)) {
+                changed.put(file, contents);
+                stored = contents;
+            }
+            dirty = false;
+        }
+    }
+}
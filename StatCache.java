@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** Remembers the blob SHA of each working file together with the
+ * size, modification time and inode it had when it was hashed, so a
+ * file whose metadata has not changed since is not read again. The
+ * cache lives in .gitlet/index/stat.txt, one tab-separated line per
+ * file, and is rewritten only when an entry changes.
+ * @author Megan Mehta
+ */
+
+public class StatCache {
+    /** Stat cache file path as a String. */
+    static final String STAT_FILE_PATH = ".gitlet/index/stat.txt";
+    /** Stat cache file path File object. */
+    static final File STATFILEPATH = new File(STAT_FILE_PATH);
+
+    /** Cached metadata and SHA of one working file. */
+    private static class Entry {
+        /** File size in bytes. */
+        private long size;
+        /** Modification time in nanoseconds since the epoch. */
+        private long mtime;
+        /** File system identity of the file, or "" if unavailable. */
+        private String inode;
+        /** SHA of the file's contents. */
+        private String sha;
+
+        Entry(long mySize, long myMtime, String myInode, String mySHA) {
+            this.size = mySize;
+            this.mtime = myMtime;
+            this.inode = myInode;
+            this.sha = mySHA;
+        }
+
+        /** Returns true if ATTRS describe the file this entry was made
+         * from, unchanged. */
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && mtime == mtimeOf(attrs)
+                    && inode.equals(inodeOf(attrs));
+        }
+    }
+
+    /** Entries by file name, loaded on first use. */
+    private static TreeMap<String, Entry> entries;
+
+    /** Coarsest file system timestamp granularity allowed for, in
+     * nanoseconds. */
+    static final long RACY_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    /** Time, in nanoseconds since the epoch, the cache was last saved.
+     * A file modified within RACY_WINDOW of this moment may have been
+     * changed again without its timestamp moving, so its entry is not
+     * trusted. */
+    private static long savedAt;
+
+    /** True if entries has changed since it was loaded. */
+    private static boolean dirty;
+
+    /** Returns the SHA of the contents of FILE, reading the file only if
+     * it has changed since it was last hashed. */
+    static String hash(File file) {
+        BasicFileAttributes attrs = attributes(file);
+        Entry entry = load().get(file.getName());
+        if (entry != null && entry.matches(attrs)
+                && entry.mtime + RACY_WINDOW < savedAt) {
+            return entry.sha;
+        }
+        String sha = hashContents(file);
+        put(file.getName(), attrs, sha);
+        return sha;
+    }
+
+    /** Returns the cached SHA of FILE if its metadata shows it has not
+     * changed since it was hashed, or null otherwise. */
+    static String cachedHash(File file) {
+        Entry entry = load().get(file.getName());
+        if (entry == null || !file.isFile()) {
+            return null;
+        }
+        BasicFileAttributes attrs = attributes(file);
+        if (entry.matches(attrs) && entry.mtime + RACY_WINDOW < savedAt) {
+            return entry.sha;
+        }
+        return null;
+    }
+
+    /** Records that FILE currently holds the blob SHA, as after it has
+     * been added or checked out. */
+    static void record(File file, String sha) {
+        put(file.getName(), attributes(file), sha);
+    }
+
+    /** Forgets FILENAME, as after it has been deleted. */
+    static void forget(String fileName) {
+        if (load().remove(fileName) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Writes the cache back to disk if it has changed. */
+    static void save() {
+        if (entries == null || !dirty || !STATFILEPATH.getParentFile()
+                .isDirectory()) {
+            return;
+        }
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        StringBuilder out = new StringBuilder();
+        out.append(now).append("\n");
+        for (String name : entries.keySet()) {
+            Entry entry = entries.get(name);
+            out.append(name).append("\t").append(entry.size).append("\t")
+                    .append(entry.mtime).append("\t").append(entry.inode)
+                    .append("\t").append(entry.sha).append("\n");
+        }
+        Utils.writeContents(STATFILEPATH, out.toString());
+        savedAt = now;
+        dirty = false;
+    }
+
+    /** Forgets everything loaded, so the next lookup rereads the file. */
+    static void reload() {
+        entries = null;
+        dirty = false;
+    }
+
+    /** Returns the entries, reading the cache file if needed. */
+    private static TreeMap<String, Entry> load() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<>();
+        savedAt = 0;
+        dirty = false;
+        if (!STATFILEPATH.isFile()) {
+            return entries;
+        }
+        String[] lines = Utils.readContentsAsString(STATFILEPATH).split("\n");
+        try {
+            savedAt = Long.parseLong(lines[0]);
+            for (int i = 1; i < lines.length; i += 1) {
+                String[] fields = lines[i].split("\t", -1);
+                if (fields.length == 5) {
+                    entries.put(fields[0], new Entry(
+                            Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2]), fields[3], fields[4]));
+                }
+            }
+        } catch (NumberFormatException excp) {
+            entries.clear();
+            savedAt = 0;
+        }
+        return entries;
+    }
+
+    /** Stores an entry for FILENAME with metadata ATTRS and SHA. */
+    private static void put(String fileName, BasicFileAttributes attrs,
+                            String sha) {
+        load().put(fileName, new Entry(attrs.size(), mtimeOf(attrs),
+                inodeOf(attrs), sha));
+        dirty = true;
+    }
+
+    /** Returns the metadata of FILE. */
+    private static BasicFileAttributes attributes(File file) {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the modification time in ATTRS in nanoseconds. */
+    private static long mtimeOf(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /** Returns the file system identity in ATTRS, or "". */
+    private static String inodeOf(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? "" : key.toString();
+    }
+
+    /** Returns the SHA of the contents of FILE, streaming it. */
+    private static String hashContents(File file) {
+        try (DigestInputStream in = new DigestInputStream(
+                new FileInputStream(file), Utils.sha1Digest())) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return Utils.toHex(in.getMessageDigest().digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
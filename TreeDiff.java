@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Prints the changes between two sets of files as a unified diff.
+ * Each side is a map of file name to blob SHA; the two maps are walked
+ * together in sorted order, and a file whose blob is the same on both
+ * sides is skipped without reading it, as is a working file that still
+ * holds its old blob; that check goes through the stat cache, so it is
+ * made here rather than on the pool. The remaining files are
+ * compared on a pool of threads, a bounded number at a time, and their
+ * patches are written out in name order as each one finishes, so a
+ * large change set is never held in memory all at once.
+ * @author Megan Mehta
+ */
+
+public class TreeDiff {
+    /** Blob SHA standing for "the working file of the same name". */
+    static final String WORKING = "";
+
+    /** Lines of context around each change. */
+    static final int CONTEXT = 3;
+
+    /** Number of leading bytes searched for a NUL to detect binary
+     * files. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Name printed in place of a missing file. */
+    private static final String DEV_NULL = "/dev/null";
+
+    /** Writes to OUT the unified diff from OLDFILES to NEWFILES, both maps
+     * of file name to blob SHA, or to WORKING for the working file. */
+    static void print(TreeMap<String, String> oldFiles,
+                      TreeMap<String, String> newFiles, OutputStream out) {
+        int threads = Math.max(1, Config.getInt("threads",
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            Iterator<Map.Entry<String, String>> olds =
+                    oldFiles.entrySet().iterator();
+            Iterator<Map.Entry<String, String>> news =
+                    newFiles.entrySet().iterator();
+            Map.Entry<String, String> o = olds.hasNext() ? olds.next() : null;
+            Map.Entry<String, String> n = news.hasNext() ? news.next() : null;
+            while (o != null || n != null) {
+                int cmp = o == null ? 1 : n == null ? -1
+                        : o.getKey().compareTo(n.getKey());
+                String fileName = cmp <= 0 ? o.getKey() : n.getKey();
+                String oldSHA = cmp <= 0 ? o.getValue() : null;
+                String newSHA = cmp >= 0 ? n.getValue() : null;
+                if (oldSHA == null || (!oldSHA.equals(newSHA)
+                        && !unchanged(fileName, oldSHA, newSHA))) {
+                    pending.add(pool.submit(
+                        () -> patch(fileName, oldSHA, newSHA)));
+                    if (pending.size() >= 2 * threads) {
+                        out.write(pending.remove().get());
+                    }
+                }
+                o = cmp <= 0 ? (olds.hasNext() ? olds.next() : null) : o;
+                n = cmp >= 0 ? (news.hasNext() ? news.next() : null) : n;
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.remove().get());
+            }
+            out.flush();
+        } catch (IOException | InterruptedException | ExecutionException excp) {
+            Throwable cause = excp.getCause() == null ? excp : excp.getCause();
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Returns true if NEWSHA is WORKING and working file FILENAME
+     * holds exactly blob OLDSHA. */
+    private static boolean unchanged(String fileName, String oldSHA,
+                                     String newSHA) {
+        return WORKING.equals(newSHA) && ObjectStore.sameContents(
+                Utils.join(GitletRepo.CURRENT_PATH, fileName), oldSHA);
+    }
+
+    /** Returns the patch turning blob OLDSHA into blob NEWSHA for file
+     * FILENAME, as bytes. Either SHA may be null for a missing file or
+     * WORKING for the working file. Only reads files, so it may run on
+     * any thread. */
+    static byte[] patch(String fileName, String oldSHA, String newSHA) {
+        File working = Utils.join(GitletRepo.CURRENT_PATH, fileName);
+        byte[] oldBytes = contents(working, oldSHA);
+        byte[] newBytes = contents(working, newSHA);
+        StringBuilder result = new StringBuilder();
+        result.append("diff --git a/").append(fileName).append(" b/")
+            .append(fileName).append("\n");
+        if (oldSHA == null) {
+            result.append("new file\n");
+        } else if (newSHA == null) {
+            result.append("deleted file\n");
+        }
+        String oldName = oldSHA == null ? DEV_NULL : "a/" + fileName;
+        String newName = newSHA == null ? DEV_NULL : "b/" + fileName;
+        if (isBinary(oldBytes) || isBinary(newBytes)) {
+            result.append("Binary files ").append(oldName).append(" and ")
+                .append(newName).append(" differ\n");
+        } else if (oldBytes.length > 0 || newBytes.length > 0) {
+            result.append("--- ").append(oldName).append("\n");
+            result.append("+++ ").append(newName).append("\n");
+            hunks(BlobDelta.splitLines(oldBytes),
+                  BlobDelta.splitLines(newBytes), result);
+        }
+        return result.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Appends to RESULT the hunks of the unified diff from OLDLINES to
+     * NEWLINES, each line keeping its line terminator. */
+    static void hunks(List<String> oldLines, List<String> newLines,
+                      StringBuilder result) {
+        Diff diff = new Diff();
+        if (Config.get("diffAlgorithm", "myers").equals("histogram")) {
+            diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        }
+        diff.setSequences(oldLines, newLines);
+        int[] edits = diff.diffs();
+        for (int first = 0; first < edits.length;) {
+            int last = first;
+            while (last + 4 < edits.length && edits[last + 4]
+                   - (edits[last] + edits[last + 1]) <= 2 * CONTEXT) {
+                last += 4;
+            }
+            int start1 = Math.max(0, edits[first] - CONTEXT);
+            int start2 = edits[first + 2] - (edits[first] - start1);
+            int end1 = Math.min(oldLines.size(),
+                    edits[last] + edits[last + 1] + CONTEXT);
+            int end2 = edits[last + 2] + edits[last + 3]
+                    + (end1 - edits[last] - edits[last + 1]);
+            result.append("@@ -").append(range(start1, end1 - start1))
+                .append(" +").append(range(start2, end2 - start2))
+                .append(" @@\n");
+            int i = start1;
+            for (int k = first; k <= last; k += 4) {
+                for (; i < edits[k]; i += 1) {
+                    line(' ', oldLines.get(i), result);
+                }
+                for (; i < edits[k] + edits[k + 1]; i += 1) {
+                    line('-', oldLines.get(i), result);
+                }
+                for (int j = edits[k + 2]; j < edits[k + 2] + edits[k + 3];
+                     j += 1) {
+                    line('+', newLines.get(j), result);
+                }
+            }
+            for (; i < end1; i += 1) {
+                line(' ', oldLines.get(i), result);
+            }
+            first = last + 4;
+        }
+    }
+
+    /** Returns the hunk header range of LENGTH lines starting at 0-based
+     * line START. */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        } else if (length == 0) {
+            return start + ",0";
+        }
+        return (start + 1) + "," + length;
+    }
+
+    /** Appends LINE to RESULT, marked with PREFIX. */
+    private static void line(char prefix, String line, StringBuilder result) {
+        result.append(prefix).append(line);
+        if (!line.endsWith("\n")) {
+            result.append("\n\\ No newline at end of file\n");
+        }
+    }
+
+    /** Returns the contents of blob BLOBSHA, of WORKING if BLOBSHA is
+     * WORKING, or nothing if it is null. */
+    private static byte[] contents(File working, String blobSHA) {
+        if (blobSHA == null) {
+            return new byte[0];
+        } else if (blobSHA.equals(WORKING)) {
+            return Utils.readContents(working);
+        }
+        return ObjectStore.readBlob(blobSHA);
+    }
+
+    /** Returns true if CONTENTS looks like binary data. */
+    private static boolean isBinary(byte[] contents) {
+        for (int i = 0; i < Math.min(contents.length, BINARY_PROBE); i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Moves the working directory from one commit's files to another's,
+ * touching only what differs. The two blob maps are walked together
+ * in sorted order once: a file tracked by both with the same blob is
+ * left alone, a file only the current commit tracks is deleted, and
+ * a file that is new or changed in the target is handed to the
+ * Materializer to be written.
+ * @author Megan Mehta
+ */
+
+public class TreeUpdate {
+    /** Message printed when an untracked file would be overwritten. */
+    static final String UNTRACKED_IN_THE_WAY = "There is an untracked file "
+            + "in the way; delete it, or add and commit it first.";
+
+    /** Updates the working directory from CURRENT to TARGET, both maps of
+     * file name to blob SHA. Files staged in STAGE count as tracked.
+     * Returns false, printing a message and changing nothing, if a file
+     * TARGET would write exists but is untracked. */
+    static boolean apply(TreeMap<String, String> current,
+                         TreeMap<String, String> target, Stage stage) {
+        return apply(current, target, stage, false);
+    }
+
+    /** As apply(CURRENT, TARGET, STAGE), but if RESTORE, files both maps
+     * track with the same blob are also rewritten if their working copy
+     * has changed. */
+    static boolean apply(TreeMap<String, String> current,
+                         TreeMap<String, String> target, Stage stage,
+                         boolean restore) {
+        TreeMap<String, String> toWrite = new TreeMap<>();
+        TreeMap<String, String> toDelete = new TreeMap<>();
+        Iterator<Map.Entry<String, String>> curr =
+                current.entrySet().iterator();
+        Iterator<Map.Entry<String, String>> next =
+                target.entrySet().iterator();
+        Map.Entry<String, String> c = curr.hasNext() ? curr.next() : null;
+        Map.Entry<String, String> t = next.hasNext() ? next.next() : null;
+        while (c != null || t != null) {
+            int cmp = c == null ? 1 : t == null ? -1
+                    : c.getKey().compareTo(t.getKey());
+            if (cmp < 0) {
+                toDelete.put(c.getKey(), c.getValue());
+                c = curr.hasNext() ? curr.next() : null;
+            } else if (cmp > 0) {
+                if (isUntracked(t.getKey(), stage)) {
+                    System.out.println(UNTRACKED_IN_THE_WAY);
+                    return false;
+                }
+                toWrite.put(t.getKey(), t.getValue());
+                t = next.hasNext() ? next.next() : null;
+            } else {
+                if (restore || !c.getValue().equals(t.getValue())) {
+                    toWrite.put(t.getKey(), t.getValue());
+                }
+                c = curr.hasNext() ? curr.next() : null;
+                t = next.hasNext() ? next.next() : null;
+            }
+        }
+
+        for (String fileName : toDelete.keySet()) {
+            Utils.restrictedDelete(Utils.join(GitletRepo.CURRENT_PATH,
+                    fileName));
+            StatCache.forget(fileName);
+        }
+        Materializer.materialize(toWrite);
+        return true;
+    }
+
+    /** Returns true if working file FILENAME exists and is neither
+     * tracked by the current commit nor staged in STAGE. Called only for
+     * files the current commit does not track. */
+    private static boolean isUntracked(String fileName, Stage stage) {
+        File file = Utils.join(GitletRepo.CURRENT_PATH, fileName);
+        return file.isFile()
+                && !stage.getAddedFiles().containsKey(fileName)
+                && !stage.getRemovedFiles().containsKey(fileName);
+    }
+}
@@ -2,6 +2,24 @@ package gitlet;
 
 import ucb.junit.textui;
 import org.junit.Test;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import static org.junit.Assert.*;
 
 /** The suite of all JUnit tests for the gitlet package.
@@ -20,6 +38,860 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Non-overlapping changes from both sides merge cleanly. */
+    @Test
+    public void diff3CleanMergeTest() {
+        Diff3 merger = new Diff3();
+        List<String> merged = merger.merge(
+                lines("a", "b", "c", "d"), lines("A", "b", "c", "d"),
+                lines("a", "b", "c", "D"), "ours", "theirs");
+        assertEquals(lines("A", "b", "c", "D"), merged);
+        assertEquals(0, merger.conflicts());
+    }
+
+    /** Overlapping changes are kept between conflict markers. */
+    @Test
+    public void diff3ConflictTest() {
+        Diff3 merger = new Diff3();
+        List<String> merged = merger.merge(
+                lines("a", "b", "c"), lines("a", "x", "c"),
+                lines("a", "y", "c"), "ours", "theirs");
+        assertEquals(lines("a", "<<<<<<< ours", "x", "=======", "y",
+                ">>>>>>> theirs", "c"), merged);
+        assertEquals(1, merger.conflicts());
+    }
+
+    /** Diff finds the shortest edit between two sequences. */
+    @Test
+    public void diffEditsTest() {
+        Diff diff = new Diff();
+        diff.setSequences(lines("a", "b", "c", "d", "e"),
+                lines("a", "c", "d", "x", "e"));
+        assertEquals(4, diff.lls());
+        assertEquals(2, diff.lls(3, 2));
+        assertArrayEquals(new int[] { 0, 0, 1, 2, 1, 2, 4, 4, 1 },
+                diff.commonSubsequence());
+        assertArrayEquals(new int[] { 1, 1, 1, 0, 4, 0, 3, 1 }, diff.diffs());
+        assertFalse(diff.sequencesEqual());
+    }
+
+    /** Diff handles sequences far too long for a quadratic table. */
+    @Test
+    public void diffLongSequencesTest() {
+        List<String> seq1 = new ArrayList<>();
+        List<String> seq2 = new ArrayList<>();
+        for (int i = 0; i < 200000; i += 1) {
+            seq1.add("line " + i);
+            seq2.add(i == 100000 ? "changed" : "line " + i);
+        }
+        Diff diff = new Diff();
+        diff.setSequences(seq1, seq2);
+        assertArrayEquals(new int[] { 100000, 1, 100000, 1 }, diff.diffs());
+        assertEquals(199999, diff.lls());
+    }
+
+    /** Histogram diff anchors on unique lines, keeping moved blocks whole. */
+    @Test
+    public void diffHistogramTest() {
+        List<String> seq1 = lines("int f() {", "    return 1;", "}", "",
+                                  "int g() {", "    int x = 2;",
+                                  "    return x;", "}");
+        List<String> seq2 = lines("int g() {", "    int x = 2;",
+                                  "    return x;", "}", "",
+                                  "int h() {", "    return 3;", "}");
+        Diff diff = new Diff();
+        diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        diff.setSequences(seq1, seq2);
+        assertArrayEquals(new int[] { 0, 4, 0, 0, 7, 0, 3, 4 }, diff.diffs());
+        assertEquals(4, diff.lls());
+        diff.setAlgorithm(Diff.Algorithm.MYERS);
+        assertEquals(4, diff.lls());
+    }
+
+    /** Histogram diff does not anchor on a line occurring more than
+     *  MAX_CHAIN times, but falls back to Myers. */
+    @Test
+    public void diffHistogramCommonLineTest() {
+        List<String> seq1 = new ArrayList<>();
+        seq1.add("a\n");
+        for (int i = 0; i < 65; i += 1) {
+            seq1.add("x\n");
+        }
+        seq1.add("b\n");
+        List<String> seq2 = lines("c", "x", "d");
+        Diff diff = new Diff();
+        diff.setSequences(seq1, seq2);
+        int[] myers = diff.diffs();
+        diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        assertArrayEquals(myers, diff.diffs());
+    }
+
+    /** Distant changes get separate hunks with three lines of context. */
+    @Test
+    public void unifiedDiffHunksTest() {
+        List<String> seq1 = new ArrayList<>();
+        List<String> seq2 = new ArrayList<>();
+        for (int i = 1; i <= 20; i += 1) {
+            seq1.add(i + "\n");
+            seq2.add((i == 2 ? "two" : i == 18 ? "eighteen" : "" + i) + "\n");
+        }
+        StringBuilder result = new StringBuilder();
+        TreeDiff.hunks(seq1, seq2, result);
+        assertEquals("@@ -1,5 +1,5 @@\n 1\n-2\n+two\n 3\n 4\n 5\n"
+                     + "@@ -15,6 +15,6 @@\n 15\n 16\n 17\n-18\n+eighteen\n"
+                     + " 19\n 20\n", result.toString());
+    }
+
+    /** Commit messages split into lowercase word tokens. */
+    @Test
+    public void messageTokensTest() {
+        assertEquals("[fix, bug, 12, in, parser]",
+                     MessageIndex.tokens("Fix bug #12 in parser; "
+                                         + "fix PARSER.").toString());
+        assertTrue(MessageIndex.tokens(" -- ").isEmpty());
+    }
+
+    /** Varints and stages survive a round trip through the codec. */
+    @Test
+    public void codecRoundTripTest() throws IOException {
+        int[] values = { 0, 1, 127, 128, 300, Integer.MAX_VALUE };
+        for (int value : values) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Codec.putVarint(out, value);
+            assertEquals(value,
+                         Codec.getVarint(ByteBuffer.wrap(out.toByteArray())));
+        }
+        Stage stage = new Stage();
+        stage.addToFile("b.txt", Utils.sha1("b"));
+        stage.addToFile("a.txt", Utils.sha1("a"));
+        stage.addToRemoveStage("c.txt", Utils.sha1("c"));
+        File file = File.createTempFile("stage", ".txt");
+        file.deleteOnExit();
+        Utils.writeContents(file, Codec.encode(stage));
+        Stage copy = Codec.readStage(file);
+        assertEquals(stage.getAddedFiles(), copy.getAddedFiles());
+        assertEquals(stage.getRemovedFiles(), copy.getRemovedFiles());
+        assertEquals(6 + 1 + 2 * (1 + 5 + 20) + 1 + (1 + 5 + 20),
+                     Codec.encode(stage).length);
+    }
+
+    /** Batch lines split into words, honouring quotes and escapes. */
+    @Test
+    public void batchSplitTest() {
+        assertArrayEquals(new String[] { "commit", "fix \"it\" now" },
+                          Batch.split("  commit \"fix \\\"it\\\" now\""));
+        assertArrayEquals(new String[] { "add", "a b", "c" },
+                          Batch.split("add 'a b' c"));
+        assertNull(Batch.split("commit \"unclosed"));
+    }
+
+    /** Objects are renamed into place from temporary files, and in batch
+     *  mode are synced, with any new shard directory, before a state
+     *  file naming them is replaced. */
+    @Test
+    public void durabilityOrderTest() throws IOException {
+        System.setProperty("gitlet.durability", "batch");
+        try {
+            File root = Files.createTempDirectory("objects").toFile();
+            File shard = new File(root, "ab");
+            assertTrue(shard.mkdirs());
+            Durability.created(shard);
+            File object = new File(shard, "cdef.txt");
+            File temp = Durability.tempFor(object);
+            Utils.writeContents(temp, "object");
+            Durability.publish(temp, object);
+            assertFalse(temp.exists());
+            assertEquals("object", Utils.readContentsAsString(object));
+            assertTrue(Durability.isPending(shard));
+            assertTrue(Durability.isPending(object));
+
+            File ref = new File(root, "head");
+            Durability.replaceAll(Map.of(ref, "abcdef".getBytes()));
+            assertFalse(Durability.isPending(shard));
+            assertFalse(Durability.isPending(object));
+            assertEquals("abcdef", Utils.readContentsAsString(ref));
+            String[] names = root.list();
+            Arrays.sort(names);
+            assertArrayEquals(new String[] { "ab", "head" }, names);
+            object.delete();
+            shard.delete();
+            ref.delete();
+            root.delete();
+        } finally {
+            System.clearProperty("gitlet.durability");
+        }
+    }
+
+    /** A session writes back only the state it set to something new. */
+    @Test
+    public void sessionWritesChangedStateTest() {
+        RepositorySession session = RepositorySession.open();
+        try {
+            LinkedHashMap<File, byte[]> changed = new LinkedHashMap<>();
+            session.currBranch.set("master");
+            session.currBranch.collect(changed);
+            session.head.collect(changed);
+            assertEquals(1, changed.size());
+            assertEquals("master", new String(
+                    changed.get(GitletRepo.CURRBRANCHFILEPATH)));
+
+            changed.clear();
+            session.currBranch.set("master");
+            session.currBranch.collect(changed);
+            assertTrue(changed.isEmpty());
+            session.currBranch.set("dev");
+            session.currBranch.collect(changed);
+            assertEquals(1, changed.size());
+        } finally {
+            RepositorySession.close();
+        }
+    }
+
+    /** A session opened inside another reads its state from it and
+     *  hands its updates back to it instead of writing them. */
+    @Test
+    public void nestedSessionTest() {
+        RepositorySession outer = RepositorySession.open();
+        try {
+            outer.currBranch.set("dev");
+            RepositorySession inner = RepositorySession.open();
+            assertEquals("dev", inner.currBranch.get());
+            inner.currBranch.set("topic");
+            inner.flush();
+            RepositorySession.close();
+            assertEquals("topic", outer.currBranch.get());
+            LinkedHashMap<File, byte[]> changed = new LinkedHashMap<>();
+            outer.currBranch.collect(changed);
+            assertEquals("topic", new String(
+                    changed.get(GitletRepo.CURRBRANCHFILEPATH)));
+        } finally {
+            RepositorySession.close();
+        }
+    }
+
+    /** A working file is compared with a compressed blob as the blob is
+     *  inflated, and any difference in contents or length is found. */
+    @Test
+    public void compressedSameContentsTest() throws IOException {
+        byte[] contents = new byte[200000];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i * 31 % 251);
+        }
+        File blob = File.createTempFile("blob", ".txt");
+        File file = File.createTempFile("file", ".txt");
+        blob.deleteOnExit();
+        file.deleteOnExit();
+        Utils.writeCompressed(blob, Deflater.DEFAULT_COMPRESSION, contents);
+        assertTrue(Utils.isCompressed(blob));
+
+        Utils.writeContents(file, contents);
+        assertTrue(sameAsBlob(file, blob));
+        contents[contents.length - 1] += 1;
+        Utils.writeContents(file, contents);
+        assertFalse(sameAsBlob(file, blob));
+        Utils.writeContents(file, Arrays.copyOf(contents, 150000));
+        assertFalse(sameAsBlob(file, blob));
+        Utils.writeContents(file, Arrays.copyOf(contents, 250000));
+        assertFalse(sameAsBlob(file, blob));
+    }
+
+    /** Returns true if FILE holds the inflated contents of BLOB. */
+    private static boolean sameAsBlob(File file, File blob)
+        throws IOException {
+        try (InputStream in = Utils.openCompressed(blob)) {
+            return Utils.sameContents(file, in);
+        }
+    }
+
+    /** Reset moves the branch to the commit and restores its files, so
+     *  resetting back, or to HEAD itself, undoes the working changes. */
+    @Test
+    public void resetRoundTripTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "one");
+        String first = head(repo);
+        commitFile(repo, "f.txt", "two");
+        String second = head(repo);
+
+        gitlet(repo, "reset", first);
+        assertEquals(first, head(repo));
+        assertEquals("one", read(repo, "f.txt"));
+        gitlet(repo, "reset", second);
+        assertEquals(second, head(repo));
+        assertEquals("two", read(repo, "f.txt"));
+        write(repo, "f.txt", "changed");
+        gitlet(repo, "reset", second);
+        assertEquals("two", read(repo, "f.txt"));
+        assertTrue(gitlet(repo, "log").contains("commit " + second));
+    }
+
+    /** Merge combines changes made on each side since the split
+     *  point and records both parents. */
+    @Test
+    public void mergeSplitPointTest() throws IOException {
+        File repo = repository();
+        write(repo, "g.txt", "g");
+        gitlet(repo, "add", "g.txt");
+        commitFile(repo, "f.txt", "base");
+        gitlet(repo, "branch", "dev");
+        commitFile(repo, "f.txt", "ours");
+        gitlet(repo, "checkout", "dev");
+        commitFile(repo, "g.txt", "theirs");
+        commitFile(repo, "h.txt", "new");
+        gitlet(repo, "checkout", "master");
+
+        assertEquals("", gitlet(repo, "merge", "dev"));
+        assertEquals("ours", read(repo, "f.txt"));
+        assertEquals("theirs", read(repo, "g.txt"));
+        assertEquals("new", read(repo, "h.txt"));
+        String log = gitlet(repo, "log");
+        assertTrue(log.contains("Merged dev into master."));
+        assertTrue(log.contains("Merge: "));
+    }
+
+    /** Merging a branch that is ahead fast-forwards to it, and merging
+     *  one that is behind does nothing. */
+    @Test
+    public void mergeFastForwardAndAncestorTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "base");
+        gitlet(repo, "branch", "dev");
+        gitlet(repo, "checkout", "dev");
+        commitFile(repo, "f.txt", "ahead");
+        String ahead = head(repo);
+        gitlet(repo, "checkout", "master");
+
+        assertEquals("Current branch fast-forwarded.\n",
+                     gitlet(repo, "merge", "dev"));
+        assertEquals(ahead, head(repo));
+        assertEquals("ahead", read(repo, "f.txt"));
+
+        gitlet(repo, "branch", "old");
+        commitFile(repo, "f.txt", "later");
+        assertEquals("Given branch is an ancestor of the current branch.\n",
+                     gitlet(repo, "merge", "old"));
+        assertEquals("later", read(repo, "f.txt"));
+    }
+
+    /** Conflicting changes are reported and written with markers. */
+    @Test
+    public void mergeConflictTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "base\n");
+        gitlet(repo, "branch", "dev");
+        commitFile(repo, "f.txt", "ours\n");
+        gitlet(repo, "checkout", "dev");
+        commitFile(repo, "f.txt", "theirs\n");
+        gitlet(repo, "checkout", "master");
+
+        assertTrue(gitlet(repo, "merge", "dev")
+                   .contains("Encountered a merge conflict."));
+        String merged = read(repo, "f.txt");
+        assertTrue(merged.startsWith("<<<<<<<"));
+        assertTrue(merged.contains("ours\n=======\ntheirs\n>>>>>>>"));
+    }
+
+    /** Merge still works when the commit graph file has fallen behind
+     *  the commits, by rebuilding it. */
+    @Test
+    public void mergeStaleGraphTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "base");
+        gitlet(repo, "branch", "dev");
+        gitlet(repo, "checkout", "dev");
+        commitFile(repo, "f.txt", "ahead");
+        gitlet(repo, "checkout", "master");
+        File graph = new File(repo, CommitGraph.GRAPH_FILE_PATH);
+        byte[] contents = Utils.readContents(graph);
+        ByteBuffer.wrap(contents).putInt(8, 1);
+        Utils.writeContents(graph, contents);
+
+        assertEquals("Current branch fast-forwarded.\n",
+                     gitlet(repo, "merge", "dev"));
+        assertEquals("ahead", read(repo, "f.txt"));
+    }
+
+    /** A failing command in a batch is reported and drops the changes
+     *  since the last checkpoint, and the batch goes on. */
+    @Test
+    public void batchFailureTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "k.txt", "x");
+        for (File shard : new File(repo, GitletRepo.BLOB_PATH).listFiles()) {
+            for (File blob : shard.listFiles()) {
+                blob.delete();
+            }
+        }
+        write(repo, "k.txt", "y");
+        write(repo, "a.txt", "a");
+        write(repo, "b.txt", "b");
+        write(repo, "cmds", "add a.txt\ncheckpoint\nadd b.txt\n"
+              + "checkout -- k.txt\nstatus\n");
+
+        String output = gitlet(repo, "batch", "cmds");
+        assertTrue(output.contains("Command failed: checkout -- k.txt"));
+        String staged = output.substring(output.indexOf("=== Staged Files"),
+                                         output.indexOf("=== Removed"));
+        assertTrue(staged.contains("a.txt"));
+        assertFalse(staged.contains("b.txt"));
+    }
+
+    /** New SHAs from the index tail are merged into the sorted index
+     *  in order, once each. */
+    @Test
+    public void sortedIndexMergeTest() {
+        String a = "a".repeat(40), b = "b".repeat(40), c = "c".repeat(40);
+        assertEquals(a + b + c,
+                     CommitStore.mergeRecords(a + c, List.of(b, a)));
+        assertEquals(b, CommitStore.mergeRecords("", List.of(b, b)));
+    }
+
+    /** Abbreviated commit IDs of any length from four characters up
+     *  resolve, through the sorted index and its unsorted tail. */
+    @Test
+    public void abbreviatedIdTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "one");
+        String first = head(repo);
+        commitFile(repo, "f.txt", "two");
+        assertTrue(new File(repo, CommitStore.SORTED_TAIL_PATH).isFile());
+
+        gitlet(repo, "checkout", first.substring(0, 4), "--", "f.txt");
+        assertEquals("one", read(repo, "f.txt"));
+        gitlet(repo, "checkout", head(repo).substring(0, 11), "--", "f.txt");
+        assertEquals("two", read(repo, "f.txt"));
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(repo, "checkout", "0000000", "--", "f.txt"));
+    }
+
+    /** Tests that global-log reads entries newest first and honours its
+     * limit and date range. */
+    @Test
+    public void commitLogTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "one");
+        commitFile(repo, "f.txt", "two");
+        commitFile(repo, "f.txt", "three");
+        String newest = head(repo);
+
+        String log = gitlet(repo, "global-log", "-n", "2");
+        assertEquals(2, log.split("commit ", -1).length - 1);
+        assertTrue(log.startsWith("===\ncommit " + newest + "\n"));
+        assertTrue(log.indexOf("three") < log.indexOf("two"));
+        assertFalse(log.contains("one"));
+        assertEquals("", gitlet(repo, "global-log", "--since", "2999-01-01"));
+        assertTrue(gitlet(repo, "global-log", "--until", "2999-01-01")
+                   .contains("initial commit"));
+    }
+
+    /** A commit stores only its parents' SHAs, so its encoding does not
+     * grow with its history, and log still walks the whole chain. */
+    @Test
+    public void lazyParentTest() throws IOException {
+        Commit first = new Commit("initial commit", null,
+                                  new TreeMap<>(), "master");
+        Commit second = new Commit("m1", first, new TreeMap<>(),
+                                   "master");
+        Commit third = new Commit("m2", second, new TreeMap<>(),
+                                  "master");
+        assertEquals(second.getMySHA(), third.getParentSHA());
+        assertEquals(Codec.encode(second).length,
+                     Codec.encode(third).length);
+        assertEquals(Utils.serialize(second).length,
+                     Utils.serialize(third).length);
+
+        File repo = repository();
+        commitFile(repo, "f.txt", "one");
+        commitFile(repo, "f.txt", "two");
+        String log = gitlet(repo, "log");
+        assertTrue(log.indexOf("two") < log.indexOf("one"));
+        assertTrue(log.indexOf("one") < log.indexOf("initial commit"));
+    }
+
+    /** Commits are found from their full SHA directly, and the index of
+     * commit SHAs is rebuilt from the commits directory if missing. */
+    @Test
+    public void commitLookupTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "one");
+        String first = head(repo);
+        commitFile(repo, "f.txt", "two");
+        File index = new File(repo, CommitStore.INDEX_FILE_PATH);
+        List<String> ids = Arrays.asList(read(repo,
+                CommitStore.INDEX_FILE_PATH).split("\n"));
+        assertEquals(3, ids.size());
+        assertEquals(Arrays.asList(first, head(repo)), ids.subList(1, 3));
+
+        gitlet(repo, "checkout", first, "--", "f.txt");
+        assertEquals("one", read(repo, "f.txt"));
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(repo, "checkout", Utils.sha1("none"), "--",
+                            "f.txt"));
+
+        assertTrue(index.delete());
+        commitFile(repo, "f.txt", "three");
+        ids = Arrays.asList(read(repo, CommitStore.INDEX_FILE_PATH)
+                            .split("\n"));
+        assertEquals(4, ids.size());
+        assertTrue(ids.containsAll(Arrays.asList(first, head(repo))));
+    }
+
+    /** Objects are written to two-hex-digit shard directories, and
+     * unsharded objects stay readable until migrated. */
+    @Test
+    public void shardedStoreTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "one");
+        String first = head(repo);
+        commitFile(repo, "f.txt", "two");
+        File blobs = new File(repo, GitletRepo.BLOB_PATH);
+        File commits = new File(repo, GitletRepo.COMMIT_PATH);
+        File blob = ObjectStore.shardedFile(blobs, Utils.sha1("one"));
+        File commit = ObjectStore.shardedFile(commits, first);
+        assertEquals(Utils.sha1("one").substring(0, 2),
+                     blob.getParentFile().getName());
+        assertTrue(blob.isFile());
+        assertTrue(commit.isFile());
+
+        Files.move(blob.toPath(),
+                   ObjectStore.legacyFile(blobs, Utils.sha1("one")).toPath());
+        Files.move(commit.toPath(),
+                   ObjectStore.legacyFile(commits, first).toPath());
+        gitlet(repo, "checkout", first, "--", "f.txt");
+        assertEquals("one", read(repo, "f.txt"));
+        assertEquals("Migrated 1 blobs and 1 commits.\n",
+                     gitlet(repo, "migrate-objects"));
+        assertTrue(blob.isFile());
+        assertTrue(commit.isFile());
+    }
+
+    /** Blobs and commits are stored deflated behind a magic header,
+     * and blobs stored uncompressed by older versions still read. */
+    @Test
+    public void compressedObjectsTest() throws IOException {
+        File repo = repository();
+        String contents = "the same line again\n".repeat(1000);
+        commitFile(repo, "f.txt", contents);
+        File blob = ObjectStore.shardedFile(
+                new File(repo, GitletRepo.BLOB_PATH), Utils.sha1(contents));
+        byte[] stored = Files.readAllBytes(blob.toPath());
+        assertTrue(Utils.isCompressed(blob));
+        assertTrue(stored.length < contents.length() / 10);
+        assertEquals(contents, new String(Utils.decompress(stored)));
+        File commit = ObjectStore.shardedFile(
+                new File(repo, GitletRepo.COMMIT_PATH), head(repo));
+        assertTrue(Utils.isCompressed(commit));
+
+        Utils.writeContents(blob, contents);
+        write(repo, "f.txt", "changed");
+        gitlet(repo, "checkout", "--", "f.txt");
+        assertEquals(contents, read(repo, "f.txt"));
+    }
+
+    /** With deltas enabled, a new version of a file is stored as a delta
+     * against the previous one, up to the configured chain depth, and
+     * every version reads back whole. */
+    @Test
+    public void deltaStorageTest() throws IOException {
+        File repo = repository();
+        gitlet(repo, "config", "delta", "true");
+        gitlet(repo, "config", "deltaDepth", "1");
+        File blobs = new File(repo, GitletRepo.BLOB_PATH);
+        String base = "line\n".repeat(500);
+        String[] versions = { base + "one\n", base + "two\n",
+                              base + "three\n" };
+        List<String> commits = new ArrayList<>();
+        for (String version : versions) {
+            commitFile(repo, "f.txt", version);
+            commits.add(head(repo));
+        }
+        String second = Utils.sha1(versions[1]);
+        File delta = Utils.join(blobs, second.substring(0, 2),
+                                second.substring(2) + ObjectStore.DELTA_SUFFIX);
+        assertTrue(delta.isFile());
+        assertFalse(ObjectStore.shardedFile(blobs, second).exists());
+        assertTrue(delta.length() < versions[1].length() / 10);
+        assertTrue(ObjectStore.shardedFile(blobs, Utils.sha1(versions[2]))
+                   .isFile());
+
+        for (int i = 0; i < versions.length; i += 1) {
+            gitlet(repo, "checkout", commits.get(i), "--", "f.txt");
+            assertEquals(versions[i], read(repo, "f.txt"));
+        }
+    }
+
+    /** Adding a file streams it into a blob named by the SHA-1 of its
+     * contents, leaving no temporary files behind. */
+    @Test
+    public void streamingAddTest() throws IOException {
+        File repo = repository();
+        byte[] contents = new byte[6 << 20];
+        new Random(7).nextBytes(contents);
+        Files.write(new File(repo, "big.bin").toPath(), contents);
+        Files.write(new File(repo, "copy.bin").toPath(), contents);
+        gitlet(repo, "add", "big.bin");
+        gitlet(repo, "add", "copy.bin");
+        gitlet(repo, "commit", "big");
+
+        File blobs = new File(repo, GitletRepo.BLOB_PATH);
+        File blob = ObjectStore.shardedFile(blobs, Utils.sha1(contents));
+        assertTrue(blob.isFile());
+        assertArrayEquals(new String[] {},
+                          blobs.list((dir, name) -> name.startsWith("tmp")));
+        assertTrue(new File(repo, "big.bin").delete());
+        gitlet(repo, "checkout", "--", "big.bin");
+        assertTrue(Arrays.equals(contents,
+                Files.readAllBytes(new File(repo, "big.bin").toPath())));
+    }
+
+    /** Status takes the SHA of a working file from the stat cache while
+     * its size, mtime and inode are unchanged, and hashes it again once
+     * any of them changes. */
+    @Test
+    public void statCacheTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "f.txt", "one");
+        File file = new File(repo, "f.txt");
+        long old = System.currentTimeMillis() - 60_000;
+        assertTrue(file.setLastModified(old));
+        assertFalse(gitlet(repo, "status").contains("f.txt(modified)"));
+        String cache = read(repo, StatCache.STAT_FILE_PATH);
+        assertTrue(cache.contains("f.txt\t3\t"));
+
+        write(repo, StatCache.STAT_FILE_PATH,
+              cache.replace(Utils.sha1("one"), Utils.sha1("two")));
+        assertTrue(gitlet(repo, "status").contains("f.txt(modified)"));
+
+        assertTrue(file.setLastModified(old - 60_000));
+        assertFalse(gitlet(repo, "status").contains("f.txt(modified)"));
+        write(repo, "f.txt", "two");
+        assertTrue(file.setLastModified(old));
+        assertTrue(gitlet(repo, "status").contains("f.txt(modified)"));
+    }
+
+    /** Add stages every file named by its arguments, globs and "."
+     * included, and reports each argument that names nothing. */
+    @Test
+    public void multiPathAddTest() throws IOException {
+        File repo = repository();
+        gitlet(repo, "config", "threads", "4");
+        for (String name : new String[] { "a.txt", "b.txt", "c.md",
+                                          "d.md" }) {
+            write(repo, name, name);
+        }
+        assertEquals("File does not exist.\nFile does not exist.\n",
+                     gitlet(repo, "add", "*.txt", "c.md", "none.txt",
+                            "*.java"));
+        assertTrue(gitlet(repo, "status").contains(
+                "=== Staged Files ===\na.txt\nb.txt\nc.md\n\n"));
+
+        gitlet(repo, "commit", "three");
+        write(repo, "a.txt", "changed");
+        gitlet(repo, "add", ".");
+        assertTrue(gitlet(repo, "status").contains(
+                "=== Staged Files ===\na.txt\nd.md\n\n"));
+        gitlet(repo, "commit", "two");
+        assertTrue(new File(repo, "a.txt").delete());
+        gitlet(repo, "checkout", "--", "a.txt");
+        assertEquals("changed", read(repo, "a.txt"));
+    }
+
+    /** Switching branches writes every changed file through the
+     * pipeline, whole and delta blobs alike, and removes files the
+     * target branch does not track. */
+    @Test
+    public void materializeBranchTest() throws IOException {
+        File repo = repository();
+        gitlet(repo, "config", "checkoutThreads", "3");
+        gitlet(repo, "config", "delta", "true");
+        int count = 40;
+        String base = "shared line\n".repeat(200);
+        for (int i = 0; i < count; i += 1) {
+            write(repo, "f" + i + ".txt", base + "master " + i);
+        }
+        gitlet(repo, "add", ".");
+        gitlet(repo, "commit", "master files");
+        gitlet(repo, "branch", "other");
+        gitlet(repo, "checkout", "other");
+        for (int i = 0; i < count; i += 2) {
+            write(repo, "f" + i + ".txt", base + "other " + i);
+        }
+        write(repo, "extra.txt", "extra");
+        gitlet(repo, "add", ".");
+        gitlet(repo, "commit", "other files");
+
+        gitlet(repo, "checkout", "master");
+        assertFalse(new File(repo, "extra.txt").exists());
+        for (int i = 0; i < count; i += 1) {
+            assertEquals(base + "master " + i, read(repo, "f" + i + ".txt"));
+        }
+        gitlet(repo, "checkout", "other");
+        assertEquals("extra", read(repo, "extra.txt"));
+        for (int i = 0; i < count; i += 1) {
+            assertEquals(base + (i % 2 == 0 ? "other " : "master ") + i,
+                         read(repo, "f" + i + ".txt"));
+        }
+    }
+
+    /** The commit graph file holds one record per commit, in commit
+     * order, with its parents' positions and a generation one more
+     * than its highest parent's. */
+    @Test
+    public void commitGraphTest() throws IOException {
+        File repo = repository();
+        commitFile(repo, "a.txt", "a");
+        gitlet(repo, "branch", "dev");
+        commitFile(repo, "b.txt", "b");
+        String ours = head(repo);
+        gitlet(repo, "checkout", "dev");
+        commitFile(repo, "c.txt", "c");
+        commitFile(repo, "c.txt", "cc");
+        String theirs = head(repo);
+        gitlet(repo, "checkout", "master");
+        gitlet(repo, "merge", "dev");
+
+        ByteBuffer graph = ByteBuffer.wrap(Files.readAllBytes(
+                new File(repo, CommitGraph.GRAPH_FILE_PATH).toPath()));
+        assertEquals(CommitGraph.MAGIC, graph.getInt(0));
+        assertEquals(6, graph.getInt(8));
+        List<String> shas = new ArrayList<>();
+        for (int pos = 0; pos < 6; pos += 1) {
+            byte[] sha = new byte[CommitGraph.SHA_SIZE];
+            graph.get(CommitGraph.HEADER_SIZE
+                      + pos * CommitGraph.RECORD_SIZE, sha);
+            shas.add(Utils.toHex(sha));
+        }
+        assertEquals(Arrays.asList(ours, theirs, head(repo)),
+                     Arrays.asList(shas.get(2), shas.get(4), shas.get(5)));
+        int merge = CommitGraph.HEADER_SIZE + 5 * CommitGraph.RECORD_SIZE
+                    + CommitGraph.SHA_SIZE;
+        assertEquals(2, graph.getInt(merge));
+        assertEquals(4, graph.getInt(merge + 4));
+        int[] generations = new int[6];
+        for (int pos = 0; pos < 6; pos += 1) {
+            generations[pos] = graph.getInt(CommitGraph.HEADER_SIZE
+                    + pos * CommitGraph.RECORD_SIZE + CommitGraph.SHA_SIZE
+                    + 16);
+        }
+        assertArrayEquals(new int[] { 1, 2, 3, 3, 4, 5 }, generations);
+    }
+
+    /** The client runs commands in a daemon serving the repository,
+     * which sees changes made by other processes, and runs them itself
+     * once the daemon has stopped. */
+    @Test
+    public void daemonTest() throws IOException, InterruptedException {
+        File repo = repository();
+        Process daemon = start(repo, "gitlet.Main", "daemon");
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(daemon.getInputStream()));
+            assertTrue(reader.readLine().startsWith("Daemon serving "));
+            assertEquals("A daemon is already running.\n",
+                         gitlet(repo, "daemon"));
+
+            write(repo, "f.txt", "one");
+            client(repo, "add", "f.txt");
+            client(repo, "commit", "one");
+            assertTrue(gitlet(repo, "log").contains("one"));
+            commitFile(repo, "f.txt", "two");
+            String log = client(repo, "log");
+            assertTrue(log.indexOf("two") < log.indexOf("one"));
+            assertTrue(client(repo, "status").contains(
+                    "=== Staged Files ===\n\n"));
+
+            gitlet(repo, "daemon", "stop");
+            assertTrue(daemon.waitFor(10, TimeUnit.SECONDS));
+            assertFalse(new File(repo, Daemon.SOCKET_PATH).exists());
+            assertTrue(client(repo, "log").contains("two"));
+        } finally {
+            daemon.destroy();
+        }
+    }
+
+    /** Returns LINES, each ending with a newline. */
+    private static List<String> lines(String... lines) {
+        List<String> result = new ArrayList<>();
+        for (String line : lines) {
+            result.add(line + "\n");
+        }
+        return result;
+    }
+
+    /** Returns a new Gitlet repository in a temporary directory. */
+    private static File repository() throws IOException {
+        File repo = Files.createTempDirectory("gitlet").toFile();
+        gitlet(repo, "init");
+        return repo;
+    }
+
+    /** Runs Gitlet with ARGS in directory REPO, in a process of its own,
+     *  and returns what it prints. */
+    private static String gitlet(File repo, String... args)
+        throws IOException {
+        return output(start(repo, "gitlet.Main", args));
+    }
+
+    /** Runs the Gitlet client with ARGS in directory REPO, in a process
+     *  of its own, and returns what it prints. */
+    private static String client(File repo, String... args)
+        throws IOException {
+        return output(start(repo, "gitlet.Client", args));
+    }
+
+    /** Starts class MAINCLASS with ARGS in directory REPO, in a process
+     *  of its own, and returns the process. */
+    private static Process start(File repo, String mainClass,
+                                 String... args) throws IOException {
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            classPath.append(new File(entry).getAbsolutePath())
+                .append(File.pathSeparator);
+        }
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java")
+                .toString(), "-cp", classPath.toString(), mainClass));
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(repo)
+            .redirectErrorStream(true).start();
+    }
+
+    /** Returns everything PROCESS prints, once it has exited. */
+    private static String output(Process process) throws IOException {
+        String output = new String(process.getInputStream().readAllBytes());
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        return output;
+    }
+
+    /** Writes CONTENTS to file NAME of REPO, then adds and commits it
+     *  with CONTENTS as the message. */
+    private static void commitFile(File repo, String name, String contents)
+        throws IOException {
+        write(repo, name, contents);
+        gitlet(repo, "add", name);
+        gitlet(repo, "commit", contents);
+    }
+
+    /** Writes CONTENTS to file NAME of REPO. */
+    private static void write(File repo, String name, String contents) {
+        Utils.writeContents(new File(repo, name), contents);
+    }
+
+    /** Returns the contents of file NAME of REPO. */
+    private static String read(File repo, String name) {
+        return Utils.readContentsAsString(new File(repo, name));
+    }
+
+    /** Returns the SHA of the head commit of REPO. */
+    private static String head(File repo) {
+        return read(repo, GitletRepo.HEAD_FILE_PATH);
+    }
+
 }
 
 
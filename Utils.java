@@ -2,15 +2,22 @@
  * University of California.  All rights reserved. */
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
@@ -19,6 +26,11 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 
 /** Assorted utilities.
@@ -45,16 +57,48 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] bytes) {
+        Formatter result = new Formatter();
+        for (byte b : bytes) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Returns the bytes written as the hexadecimal numeral HEX, as by
+     *  toHex.  Throws IllegalArgumentException if HEX is not one. */
+    static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("bad hex " + hex);
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("bad hex " + hex);
+            }
+            result[i] = (byte) (hi << 4 | lo);
+        }
+        return result;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -135,12 +179,13 @@ class Utils {
     }
 
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
-     *  Throws IllegalArgumentException in case of problems. */
+     *  FILE may be compressed or not.  Throws IllegalArgumentException in
+     *  case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
             ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+                new ObjectInputStream(openCompressed(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
             return result;
@@ -155,6 +200,177 @@ class Utils {
         writeContents(file, serialize(obj));
     }
 
+    /* COMPRESSED FILES */
+
+    /** Marks the start of a file written by openCompressedOutput. Neither
+     *  serialized objects nor ordinary text start with a zero byte, so files
+     *  written before compression are told apart by its absence. */
+    static final byte[] COMPRESSED_MAGIC = { 0, 'g', 'l', 'z' };
+
+    /** Return a stream that reads the contents of FILE, inflating them
+     *  if FILE was written by openCompressedOutput and returning them
+     *  unchanged otherwise.  The caller must close the stream. */
+    static InputStream openCompressed(File file) throws IOException {
+        BufferedInputStream in =
+            new BufferedInputStream(new FileInputStream(file));
+        in.mark(COMPRESSED_MAGIC.length);
+        byte[] header = in.readNBytes(COMPRESSED_MAGIC.length);
+        if (Arrays.equals(header, COMPRESSED_MAGIC)) {
+            return new InflaterInputStream(in);
+        }
+        in.reset();
+        return in;
+    }
+
+    /** Return a stream that writes to FILE, creating or overwriting it,
+     *  deflating at compression LEVEL (0-9, or -1 for the default).  A
+     *  LEVEL of 0 writes the data uncompressed.  The caller must close
+     *  the stream. */
+    static OutputStream openCompressedOutput(File file, int level)
+        throws IOException {
+        OutputStream out =
+            new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+        if (level == 0) {
+            return out;
+        }
+        out.write(COMPRESSED_MAGIC);
+        return new DeflaterOutputStream(out, new Deflater(level)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                def.end();
+            }
+        };
+    }
+
+    /** Return true if FILE was written by openCompressedOutput with a
+     *  nonzero level. */
+    static boolean isCompressed(File file) {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return Arrays.equals(in.readNBytes(COMPRESSED_MAGIC.length),
+                                 COMPRESSED_MAGIC);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the contents of FILE, inflated if FILE is compressed.
+     *  Throws IllegalArgumentException in case of problems. */
+    static byte[] readCompressed(File file) {
+        try (InputStream in = openCompressed(file)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return DATA, the contents of a file that may have been written by
+     *  openCompressedOutput, inflated if it was compressed.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static byte[] decompress(byte[] data) {
+        if (data.length < COMPRESSED_MAGIC.length
+            || !Arrays.equals(data, 0, COMPRESSED_MAGIC.length,
+                              COMPRESSED_MAGIC, 0, COMPRESSED_MAGIC.length)) {
+            return data;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, COMPRESSED_MAGIC.length,
+                              data.length - COMPRESSED_MAGIC.length);
+            ByteArrayOutputStream result =
+                new ByteArrayOutputStream(2 * data.length);
+            byte[] buffer = new byte[1 << 16];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput()
+                               || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("truncated object");
+                }
+                result.write(buffer, 0, n);
+            }
+            return result.toByteArray();
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Write CONTENTS to FILE deflated at compression LEVEL.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void writeCompressed(File file, int level, byte[] contents) {
+        try (OutputStream out = openCompressedOutput(file, level)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Size of the windows sameContents maps at a time. */
+    private static final int MAP_WINDOW = 1 << 26;
+
+    /** Return true iff FILE1 and FILE2 have identical contents.  Files of
+     *  different sizes are rejected without being read; otherwise both are
+     *  memory-mapped a window at a time and compared in bulk.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static boolean sameContents(File file1, File file2) {
+        try (RandomAccessFile raf1 = new RandomAccessFile(file1, "r");
+             RandomAccessFile raf2 = new RandomAccessFile(file2, "r");
+             FileChannel ch1 = raf1.getChannel();
+             FileChannel ch2 = raf2.getChannel()) {
+            long size = ch1.size();
+            if (size != ch2.size()) {
+                return false;
+            }
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                long len = Math.min(MAP_WINDOW, size - pos);
+                MappedByteBuffer buf1 =
+                    ch1.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                MappedByteBuffer buf2 =
+                    ch2.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                if (buf1.mismatch(buf2) != -1) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Size of the pieces of a stream sameContents compares at a time. */
+    private static final int COMPARE_CHUNK = 1 << 16;
+
+    /** Return true iff FILE holds exactly the bytes remaining in
+     *  CONTENTS, such as an inflated blob.  FILE is memory-mapped a
+     *  window at a time and compared in bulk with CONTENTS as it is
+     *  read, stopping at the first difference.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static boolean sameContents(File file, InputStream contents) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            long size = ch.size();
+            byte[] chunk = new byte[COMPARE_CHUNK];
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                                              pos,
+                                              Math.min(MAP_WINDOW, size - pos));
+                while (buf.hasRemaining()) {
+                    int n = contents.readNBytes(chunk, 0,
+                            Math.min(chunk.length, buf.remaining()));
+                    if (n == 0 || ByteBuffer.wrap(chunk, 0, n)
+                        .mismatch(buf.slice(buf.position(), n)) != -1) {
+                        return false;
+                    }
+                    buf.position(buf.position() + n);
+                }
+            }
+            return contents.read() == -1;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */